@@ -0,0 +1,121 @@
+package com.riaanvo;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Generates a synthetic categorical data set for the benchmarks. The class is the first column, as in the mushroom
+ * data set, and depends on the first three attributes with some noise, so the built trees have a realistic shape. The
+ * same parameters always give the same data.
+ */
+final class BenchmarkData {
+
+    private final String[] headers;
+    private final String[][] rows;
+
+    /**
+     * Generates the rows of a data set.
+     *
+     * @param numberOfRows       The number of rows
+     * @param numberOfAttributes The number of attributes, not counting the class
+     * @param cardinality        The number of unique values of each attribute
+     */
+    BenchmarkData(int numberOfRows, int numberOfAttributes, int cardinality) {
+
+        Random random = new Random(42);
+
+        headers = new String[numberOfAttributes + 1];
+        headers[0] = "# class";
+        for (int a = 1; a < headers.length; a++) {
+            headers[a] = "attribute" + a;
+        }
+
+        rows = new String[numberOfRows][headers.length];
+        for (int r = 0; r < numberOfRows; r++) {
+
+            // Pick the attribute values and derive the class from the first few of them
+            int classValue = 0;
+            for (int a = 1; a < headers.length; a++) {
+
+                int value = random.nextInt(cardinality);
+                if (a <= 3) classValue += value;
+                rows[r][a] = "v" + value;
+            }
+
+            // Flip the class of one row in ten
+            if (random.nextInt(10) == 0) classValue++;
+            rows[r][0] = "c" + (classValue & 1);
+        }
+    }
+
+    /**
+     * Returns the header row.
+     *
+     * @return The attribute names
+     */
+    String[] getHeaders() {
+
+        return headers;
+    }
+
+    /**
+     * Returns the rows as string values.
+     *
+     * @return The rows
+     */
+    String[][] getRows() {
+
+        return rows;
+    }
+
+    /**
+     * Encodes the rows into a data set with a new data descriptor.
+     *
+     * @return The data set
+     */
+    DataSet createDataSet() {
+
+        DataDescriptor dataDescriptor = new DataDescriptor(headers);
+        DataSet dataSet = new DataSet(dataDescriptor);
+
+        int[] valueIndexes = new int[headers.length];
+        for (String[] row : rows) {
+
+            for (int a = 0; a < row.length; a++) {
+                valueIndexes[a] = dataDescriptor.tryAddUniqueValue(a, row[a]);
+            }
+            dataSet.addRow(valueIndexes);
+        }
+
+        return dataSet;
+    }
+
+    /**
+     * Writes the data set to a temporary CSV file.
+     *
+     * @return The path of the file
+     * @throws IOException If the file can not be written
+     */
+    Path writeCsvFile() throws IOException {
+
+        Path file = Files.createTempFile("id3-benchmark", ".csv");
+        file.toFile().deleteOnExit();
+
+        try (BufferedWriter bw = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+
+            bw.write(String.join(",", headers));
+            bw.write('\n');
+            for (String[] row : rows) {
+
+                bw.write(String.join(",", row));
+                bw.write('\n');
+            }
+        }
+
+        return file;
+    }
+}
@@ -0,0 +1,53 @@
+package com.riaanvo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures converting a data set into binarised attributes with
+ * {@link DataPreprocessor#binariseDataSet(DataSet, DataDescriptor)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BinariseBenchmark {
+
+    @Param({"10000", "100000"})
+    private int rows;
+
+    @Param({"8", "32"})
+    private int attributes;
+
+    @Param({"2", "12"})
+    private int cardinality;
+
+    private DataSet dataSet;
+
+    @Setup
+    public void setUp() {
+
+        dataSet = new BenchmarkData(rows, attributes, cardinality).createDataSet();
+    }
+
+    @Benchmark
+    public DataSet binariseDataSet(QuietOutput quietOutput) {
+
+        DataPreprocessor preprocessor = new DataPreprocessor();
+        preprocessor.binariseDataSet(dataSet, dataSet.getDataDescriptor());
+        return preprocessor.getDataSet();
+    }
+}
@@ -0,0 +1,98 @@
+package com.riaanvo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building an ID3 tree, and on its own the scoring of the root node split: filling the contingency tables and
+ * calculating the information gain of every attribute. With more than one thread the tables are counted by a pool of
+ * that many workers, as they are when a tree is built.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BuildBenchmark {
+
+    @Param({"10000", "100000"})
+    private int rows;
+
+    @Param({"8", "32"})
+    private int attributes;
+
+    @Param({"2", "12"})
+    private int cardinality;
+
+    @Param({"1", "4"})
+    private int threads;
+
+    private DataSet dataSet;
+    private ForkJoinPool pool;
+    private SplitEvaluator splitEvaluator;
+    private int[] sampleRows;
+    private BitSet usedAttributes;
+    private int[] rootClassCounts;
+    private double rootEntropy;
+
+    @Setup
+    public void setUp() {
+
+        dataSet = new BenchmarkData(rows, attributes, cardinality).createDataSet();
+        DataDescriptor dataDescriptor = dataSet.getDataDescriptor();
+
+        // Score the root node, where every attribute except the class is a candidate
+        EntropyTable entropyTable = new EntropyTable(dataSet.size());
+        pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        splitEvaluator = new SplitEvaluator(dataSet, entropyTable, pool);
+        sampleRows = new int[dataSet.size()];
+        for (int r = 0; r < sampleRows.length; r++) {
+            sampleRows[r] = r;
+        }
+        usedAttributes = new BitSet();
+        usedAttributes.set(dataDescriptor.getClassAttributeIndex());
+
+        rootClassCounts = new int[dataDescriptor.getNumberOfClasses()];
+        for (int r = 0; r < dataSet.size(); r++) {
+            rootClassCounts[dataSet.getValue(r, dataDescriptor.getClassAttributeIndex())]++;
+        }
+        rootEntropy = entropyTable.entropy(rootClassCounts, 0, rootClassCounts.length, dataSet.size());
+    }
+
+    @TearDown
+    public void tearDown() {
+
+        if (pool != null) pool.shutdown();
+    }
+
+    @Benchmark
+    public ID3 buildTree(QuietOutput quietOutput) {
+
+        return new ID3(dataSet, -1, threads);
+    }
+
+    @Benchmark
+    public void scoreRootSplit(Blackhole blackhole) {
+
+        splitEvaluator.countSamples(sampleRows, 0, sampleRows.length, usedAttributes);
+        for (int a = usedAttributes.nextClearBit(0); a <= attributes; a = usedAttributes.nextClearBit(a + 1)) {
+            blackhole.consume(splitEvaluator.calculateInformationGain(a, rootEntropy, sampleRows.length));
+        }
+    }
+}
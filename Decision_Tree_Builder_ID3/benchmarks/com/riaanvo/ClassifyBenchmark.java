@@ -0,0 +1,76 @@
+package com.riaanvo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures classifying every row of a data set with a built tree, reading the rows from the data set columns and from
+ * a batch of encoded rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ClassifyBenchmark {
+
+    @Param({"10000", "100000"})
+    private int rows;
+
+    @Param({"8", "32"})
+    private int attributes;
+
+    @Param({"2", "12"})
+    private int cardinality;
+
+    private DataSet dataSet;
+    private ID3 model;
+    private int[][] encodedRows;
+    private int[] predictedClasses;
+
+    @Setup
+    public void setUp() {
+
+        dataSet = new BenchmarkData(rows, attributes, cardinality).createDataSet();
+        model = new ID3(dataSet, -1);
+
+        encodedRows = new int[dataSet.size()][attributes + 1];
+        for (int r = 0; r < dataSet.size(); r++) {
+            for (int a = 0; a <= attributes; a++) {
+                encodedRows[r][a] = dataSet.getValue(r, a);
+            }
+        }
+        predictedClasses = new int[dataSet.size()];
+    }
+
+    @Benchmark
+    public int determineClass() {
+
+        CompiledTree compiledTree = model.getCompiledTree();
+        int sum = 0;
+        for (int r = 0; r < dataSet.size(); r++) {
+            sum += compiledTree.determineClass(dataSet, r);
+        }
+
+        return sum;
+    }
+
+    @Benchmark
+    public int[] classifyRows() {
+
+        model.classifyRows(encodedRows, encodedRows.length, predictedClasses);
+        return predictedClasses;
+    }
+}
@@ -0,0 +1,61 @@
+package com.riaanvo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encoding split rows of string values into value indexes with
+ * {@link DataDescriptor#convertStringValuesToInt(String[], int[])}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class EncodeBenchmark {
+
+    @Param({"10000", "100000"})
+    private int rows;
+
+    @Param({"8", "32"})
+    private int attributes;
+
+    @Param({"2", "12"})
+    private int cardinality;
+
+    private String[][] stringRows;
+    private DataDescriptor dataDescriptor;
+    private int[] valueIndexes;
+
+    @Setup
+    public void setUp() {
+
+        BenchmarkData data = new BenchmarkData(rows, attributes, cardinality);
+        stringRows = data.getRows();
+        dataDescriptor = data.createDataSet().getDataDescriptor();
+        valueIndexes = new int[attributes + 1];
+    }
+
+    @Benchmark
+    public void convertStringValuesToInt(Blackhole blackhole) {
+
+        for (String[] row : stringRows) {
+
+            dataDescriptor.convertStringValuesToInt(row, valueIndexes);
+            blackhole.consume(valueIndexes);
+        }
+    }
+}
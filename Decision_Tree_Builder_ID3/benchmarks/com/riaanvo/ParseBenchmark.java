@@ -0,0 +1,66 @@
+package com.riaanvo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures parsing a CSV file into a data set with {@link DataParser#parseData(String, DataDescriptor)}, through the
+ * buffered reader and through a memory map.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"10000", "100000"})
+    private int rows;
+
+    @Param({"8", "32"})
+    private int attributes;
+
+    @Param({"2", "12"})
+    private int cardinality;
+
+    @Param({"false", "true"})
+    private boolean memoryMapped;
+
+    private Path csvFile;
+
+    @Setup
+    public void setUp() throws IOException {
+
+        csvFile = new BenchmarkData(rows, attributes, cardinality).writeCsvFile();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+
+        Files.deleteIfExists(csvFile);
+    }
+
+    @Benchmark
+    public DataSet parseData(QuietOutput quietOutput) {
+
+        DataParser dataParser = new DataParser(memoryMapped);
+        dataParser.parseData(csvFile.toString(), null);
+        return dataParser.getDataSet();
+    }
+}
@@ -0,0 +1,42 @@
+package com.riaanvo;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Discards the standard output for the length of a trial. The builder prints the progress and time of each phase, so a
+ * benchmark that runs a phase takes this state to keep the printing out of the measured time.
+ */
+@State(Scope.Benchmark)
+public class QuietOutput {
+
+    private PrintStream systemOut;
+
+    @Setup(Level.Trial)
+    public void silence() {
+
+        systemOut = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+    }
+
+    @TearDown(Level.Trial)
+    public void restore() {
+
+        System.setOut(systemOut);
+    }
+}
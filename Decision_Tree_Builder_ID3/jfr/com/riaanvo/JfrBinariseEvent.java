@@ -0,0 +1,40 @@
+package com.riaanvo;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for the conversion of a data set to binarised attributes by the {@link DataPreprocessor}.
+ */
+@Name("com.riaanvo.Binarise")
+@Label("Binarise Data Set")
+@Category("ID3 Builder")
+@Description("Converting the categorical attributes of a data set to binary attributes")
+class JfrBinariseEvent extends jdk.jfr.Event implements FlightEvent.Recording {
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Attributes")
+    int attributes;
+
+    @Label("Binarised Attributes")
+    int binarisedAttributes;
+
+    @Label("Descriptor Defined")
+    @Description("If the binarised data descriptor was created as part of the conversion")
+    boolean descriptorDefined;
+
+    @Override
+    public void commit(FlightEvent event) {
+
+        BinariseEvent binariseEvent = (BinariseEvent) event;
+        rows = binariseEvent.rows;
+        attributes = binariseEvent.attributes;
+        binarisedAttributes = binariseEvent.binarisedAttributes;
+        descriptorDefined = binariseEvent.descriptorDefined;
+        commit();
+    }
+}
@@ -0,0 +1,52 @@
+package com.riaanvo;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for the construction of a single node of an {@link ID3} tree. A tree can have a great many
+ * nodes, so no stack trace is recorded.
+ */
+@Name("com.riaanvo.NodeBuild")
+@Label("Build Tree Node")
+@Category("ID3 Builder")
+@Description("Choosing the split of one node of a decision tree")
+@StackTrace(false)
+class JfrNodeBuildEvent extends jdk.jfr.Event implements FlightEvent.Recording {
+
+    @Label("Depth")
+    int depth;
+
+    @Label("Samples")
+    int samples;
+
+    @Label("Candidate Attributes")
+    @Description("The number of attributes whose information gain was calculated")
+    int candidateAttributes;
+
+    @Label("Split Attribute")
+    @Description("The attribute the samples were split on, or null for a leaf")
+    String splitAttribute;
+
+    @Label("Information Gain")
+    double informationGain;
+
+    @Label("Branches")
+    int branches;
+
+    @Override
+    public void commit(FlightEvent event) {
+
+        NodeBuildEvent buildEvent = (NodeBuildEvent) event;
+        depth = buildEvent.depth;
+        samples = buildEvent.samples;
+        candidateAttributes = buildEvent.candidateAttributes;
+        splitAttribute = buildEvent.splitAttribute;
+        informationGain = buildEvent.informationGain;
+        branches = buildEvent.branches;
+        commit();
+    }
+}
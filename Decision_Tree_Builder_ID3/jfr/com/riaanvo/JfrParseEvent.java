@@ -0,0 +1,50 @@
+package com.riaanvo;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for the parsing or streaming of a data set file by the {@link DataParser}.
+ */
+@Name("com.riaanvo.Parse")
+@Label("Parse Data Set")
+@Category("ID3 Builder")
+@Description("Reading and encoding the rows of a data set file")
+class JfrParseEvent extends jdk.jfr.Event implements FlightEvent.Recording {
+
+    @Label("File")
+    String filePath;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("File Size")
+    @DataAmount
+    long bytes;
+
+    @Label("Memory Mapped")
+    boolean memoryMapped;
+
+    @Label("Threads")
+    int threads;
+
+    @Label("Streamed")
+    @Description("If the rows were passed on one at a time instead of stored in a data set")
+    boolean streamed;
+
+    @Override
+    public void commit(FlightEvent event) {
+
+        ParseEvent parseEvent = (ParseEvent) event;
+        filePath = parseEvent.filePath;
+        rows = parseEvent.rows;
+        bytes = parseEvent.bytes;
+        memoryMapped = parseEvent.memoryMapped;
+        threads = parseEvent.threads;
+        streamed = parseEvent.streamed;
+        commit();
+    }
+}
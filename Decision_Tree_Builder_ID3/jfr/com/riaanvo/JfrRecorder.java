@@ -0,0 +1,53 @@
+package com.riaanvo;
+
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Creates the JDK Flight Recorder events that record the events of the builder. It is loaded by {@link FlightEvent}
+ * only if the JVM has the flight recorder.
+ */
+class JfrRecorder implements FlightEvent.Recorder {
+
+    // The flight recorder event type of each kind of event
+    private final Map<Class<? extends FlightEvent>, EventType> eventTypes = new HashMap<>();
+
+    JfrRecorder() {
+
+        if (!FlightRecorder.isAvailable()) {
+            throw new UnsupportedOperationException("The flight recorder is not available");
+        }
+
+        eventTypes.put(ParseEvent.class, EventType.getEventType(JfrParseEvent.class));
+        eventTypes.put(BinariseEvent.class, EventType.getEventType(JfrBinariseEvent.class));
+        eventTypes.put(NodeBuildEvent.class, EventType.getEventType(JfrNodeBuildEvent.class));
+    }
+
+    @Override
+    public FlightEvent.Recording createParseRecording() {
+
+        return new JfrParseEvent();
+    }
+
+    @Override
+    public FlightEvent.Recording createBinariseRecording() {
+
+        return new JfrBinariseEvent();
+    }
+
+    @Override
+    public FlightEvent.Recording createNodeBuildRecording() {
+
+        return new JfrNodeBuildEvent();
+    }
+
+    @Override
+    public boolean isEnabled(Class<? extends FlightEvent> eventClass) {
+
+        EventType eventType = eventTypes.get(eventClass);
+        return eventType != null && eventType.isEnabled();
+    }
+}
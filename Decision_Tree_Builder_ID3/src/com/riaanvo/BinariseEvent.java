@@ -0,0 +1,20 @@
+package com.riaanvo;
+
+/**
+ * Flight recorder event for the conversion of a data set to binarised attributes by the {@link DataPreprocessor}.
+ */
+class BinariseEvent extends FlightEvent {
+
+    long rows;
+    int attributes;
+    int binarisedAttributes;
+
+    // If the binarised data descriptor was created as part of the conversion
+    boolean descriptorDefined;
+
+    @Override
+    Recording createRecording(Recorder recorder) {
+
+        return recorder.createBinariseRecording();
+    }
+}
@@ -0,0 +1,125 @@
+package com.riaanvo;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Hash table from the raw bytes of an attribute value to its value index. Values can be looked up directly from a
+ * slice of a byte buffer, so a value that has been seen before can be encoded without creating a string for it.
+ */
+class ByteSliceDictionary {
+
+    // Returned when the byte slice is not in the dictionary
+    static final int NOT_FOUND = Integer.MIN_VALUE;
+
+    private byte[][] keys = new byte[16][];
+    private int[] hashes = new int[16];
+    private int[] valueIndexes = new int[16];
+    private int size = 0;
+
+    /**
+     * Looks up the value index of a slice of bytes.
+     *
+     * @param buffer The buffer containing the bytes
+     * @param offset The position of the first byte of the value
+     * @param length The number of bytes in the value
+     * @return The value index, or NOT_FOUND if the value is not in the dictionary
+     */
+    int get(ByteBuffer buffer, int offset, int length) {
+
+        int hash = hash(buffer, offset, length);
+        int mask = keys.length - 1;
+
+        // Probe linearly from the hashed slot until the value or an empty slot is found
+        for (int slot = hash & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+
+            if (hashes[slot] == hash && matches(keys[slot], buffer, offset, length)) {
+                return valueIndexes[slot];
+            }
+        }
+
+        return NOT_FOUND;
+    }
+
+    /**
+     * Adds a slice of bytes and its value index to the dictionary. The bytes are copied.
+     *
+     * @param buffer     The buffer containing the bytes
+     * @param offset     The position of the first byte of the value
+     * @param length     The number of bytes in the value
+     * @param valueIndex The value index of the value
+     */
+    void put(ByteBuffer buffer, int offset, int length, int valueIndex) {
+
+        // Keep the table at most half full so that probe sequences stay short
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+
+        byte[] key = new byte[length];
+        for (int i = 0; i < length; i++) {
+            key[i] = buffer.get(offset + i);
+        }
+
+        insert(key, hash(buffer, offset, length), valueIndex);
+        size++;
+    }
+
+    /**
+     * Places a key into the first free slot of its probe sequence.
+     */
+    private void insert(byte[] key, int hash, int valueIndex) {
+
+        int mask = keys.length - 1;
+        int slot = hash & mask;
+        while (keys[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        hashes[slot] = hash;
+        valueIndexes[slot] = valueIndex;
+    }
+
+    /**
+     * Grows the table and re-inserts all the keys.
+     */
+    private void resize(int capacity) {
+
+        byte[][] oldKeys = keys;
+        int[] oldHashes = hashes;
+        int[] oldValueIndexes = valueIndexes;
+
+        keys = new byte[capacity][];
+        hashes = new int[capacity];
+        valueIndexes = new int[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) insert(oldKeys[i], oldHashes[i], oldValueIndexes[i]);
+        }
+    }
+
+    /**
+     * Hashes a slice of bytes (FNV-1a, with the bits spread so that the low bits can be used as the slot).
+     */
+    private static int hash(ByteBuffer buffer, int offset, int length) {
+
+        int hash = 0x811C9DC5;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ buffer.get(offset + i)) * 0x01000193;
+        }
+
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Compares a stored key with a slice of bytes.
+     */
+    private static boolean matches(byte[] key, ByteBuffer buffer, int offset, int length) {
+
+        if (key.length != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (key[i] != buffer.get(offset + i)) return false;
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,206 @@
+package com.riaanvo;
+
+import java.nio.IntBuffer;
+
+/**
+ * A decision tree frozen into flat arrays for fast classification. Every node is an index into parallel arrays holding
+ * its split attribute, the index of its first sub node and its class. The sub nodes of a node are stored next to each
+ * other in the order of the split attributes values, so the sub node for value v is found at the first sub node index
+ * plus v. A node with a split value is a binary split on whether the attribute has that value, with the sub node of
+ * every other value followed by the sub node of the value. Classifying a row is a loop over these arrays, with no
+ * recursion and no allocation.
+ * <p>
+ * The arrays are held as int buffers, so a tree loaded from a model file can classify straight from the mapped file.
+ */
+public class CompiledTree {
+
+    private final IntBuffer splitAttributes;
+    private final IntBuffer splitValues;
+    private final IntBuffer firstSubNodes;
+    private final IntBuffer nodeClasses;
+    private final IntBuffer attributeValueCounts;
+
+    /**
+     * Constructor for a compiled tree. Node 0 is the root node.
+     *
+     * @param splitAttributes      The split attribute of each node, or '-1' for a leaf node
+     * @param splitValues          The value of each binary split node, or '-1' for a node split on every value
+     * @param firstSubNodes        The index of the first sub node of each node
+     * @param nodeClasses          The most common class of each node
+     * @param attributeValueCounts The number of unique values of each attribute
+     */
+    CompiledTree(int[] splitAttributes, int[] splitValues, int[] firstSubNodes, int[] nodeClasses, int[] attributeValueCounts) {
+
+        this(IntBuffer.wrap(splitAttributes), IntBuffer.wrap(splitValues), IntBuffer.wrap(firstSubNodes), IntBuffer.wrap(nodeClasses),
+                IntBuffer.wrap(attributeValueCounts));
+    }
+
+    /**
+     * Constructor for a compiled tree whose arrays are views of a buffer, such as a mapped model file. Node 0 is the
+     * root node.
+     *
+     * @param splitAttributes      The split attribute of each node, or '-1' for a leaf node
+     * @param splitValues          The value of each binary split node, or '-1' for a node split on every value
+     * @param firstSubNodes        The index of the first sub node of each node
+     * @param nodeClasses          The most common class of each node
+     * @param attributeValueCounts The number of unique values of each attribute
+     */
+    CompiledTree(IntBuffer splitAttributes, IntBuffer splitValues, IntBuffer firstSubNodes, IntBuffer nodeClasses,
+                 IntBuffer attributeValueCounts) {
+
+        this.splitAttributes = splitAttributes;
+        this.splitValues = splitValues;
+        this.firstSubNodes = firstSubNodes;
+        this.nodeClasses = nodeClasses;
+        this.attributeValueCounts = attributeValueCounts;
+    }
+
+    /**
+     * Determines the class value for a row of a data set. If the row has a value that was not seen when the tree was
+     * built, the class of the node that splits on that value is used.
+     *
+     * @param dataSet The data set containing the row
+     * @param row     The row to be classified
+     * @return The class classification for this row
+     */
+    public int determineClass(DataSet dataSet, int row) {
+
+        int node = 0;
+        int attribute;
+        while ((attribute = splitAttributes.get(node)) != -1) {
+
+            // Stop at this node if there is no sub node for the value
+            int subNode = findSubNode(node, attribute, dataSet.getValue(row, attribute));
+            if (subNode == -1) break;
+
+            node = subNode;
+        }
+
+        return nodeClasses.get(node);
+    }
+
+    /**
+     * Determines the class value for a row of value indexes, with one value for each attribute of the data descriptor.
+     *
+     * @param row The value indexes of the row
+     * @return The class classification for this row
+     */
+    public int determineClass(int[] row) {
+
+        int node = 0;
+        int attribute;
+        while ((attribute = splitAttributes.get(node)) != -1) {
+
+            // Stop at this node if there is no sub node for the value
+            int subNode = findSubNode(node, attribute, row[attribute]);
+            if (subNode == -1) break;
+
+            node = subNode;
+        }
+
+        return nodeClasses.get(node);
+    }
+
+    /**
+     * Determines the class value for a row of a batch stored as columns, with one column of value indexes for each
+     * attribute of the data descriptor.
+     *
+     * @param columns The columns of value indexes
+     * @param row     The row to be classified
+     * @return The class classification for this row
+     */
+    public int determineClass(int[][] columns, int row) {
+
+        int node = 0;
+        int attribute;
+        while ((attribute = splitAttributes.get(node)) != -1) {
+
+            // Stop at this node if there is no sub node for the value
+            int subNode = findSubNode(node, attribute, columns[attribute][row]);
+            if (subNode == -1) break;
+
+            node = subNode;
+        }
+
+        return nodeClasses.get(node);
+    }
+
+    /**
+     * Finds the sub node of a node for a value of its split attribute. A binary split sends every value other than its
+     * split value, including unknown values, to its first sub node.
+     *
+     * @param node      The node
+     * @param attribute The split attribute of the node
+     * @param value     The value index of the split attribute
+     * @return The index of the sub node, or '-1' if the node has no sub node for the value
+     */
+    private int findSubNode(int node, int attribute, int value) {
+
+        int splitValue = splitValues.get(node);
+        if (splitValue != -1) return firstSubNodes.get(node) + (value == splitValue ? 1 : 0);
+
+        if (value < 0 || value >= attributeValueCounts.get(attribute)) return -1;
+
+        return firstSubNodes.get(node) + value;
+    }
+
+    /**
+     * Returns the number of nodes in the tree.
+     *
+     * @return The number of nodes
+     */
+    public int getNumberOfNodes() {
+
+        return nodeClasses.limit();
+    }
+
+    /**
+     * Returns the split attribute of each node, or '-1' for a leaf node.
+     *
+     * @return The split attributes
+     */
+    IntBuffer getSplitAttributes() {
+
+        return splitAttributes.duplicate();
+    }
+
+    /**
+     * Returns the value of each binary split node, or '-1' for a node split on every value.
+     *
+     * @return The split values
+     */
+    IntBuffer getSplitValues() {
+
+        return splitValues.duplicate();
+    }
+
+    /**
+     * Returns the index of the first sub node of each node.
+     *
+     * @return The first sub node indexes
+     */
+    IntBuffer getFirstSubNodes() {
+
+        return firstSubNodes.duplicate();
+    }
+
+    /**
+     * Returns the most common class of each node.
+     *
+     * @return The node classes
+     */
+    IntBuffer getNodeClasses() {
+
+        return nodeClasses.duplicate();
+    }
+
+    /**
+     * Returns the number of unique values of each attribute.
+     *
+     * @return The attribute value counts
+     */
+    IntBuffer getAttributeValueCounts() {
+
+        return attributeValueCounts.duplicate();
+    }
+}
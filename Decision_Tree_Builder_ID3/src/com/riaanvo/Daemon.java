@@ -0,0 +1,266 @@
+package com.riaanvo;
+
+import org.docopt.DocoptExitException;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Map;
+
+/**
+ * Keeps a warmed up JVM running and runs ID3 Builder jobs sent to it over a socket on the loopback address. Parsed data
+ * sets and built models are cached between jobs, so repeated jobs on the same files skip parsing and training.
+ * <p>
+ * Jobs write files as the user running the daemon, so only that user may send them. When the daemon starts it writes a
+ * random token to a file in the user's home directory that only the user can read (see {@link #tokenFile(int)}), and
+ * every job must start with a line holding the token. Jobs without it are rejected.
+ * <p>
+ * After the token, a job is sent as a line holding the working directory of the client, a line holding the number of
+ * arguments and one line for each argument, the same arguments that would be given on the command line. Relative file
+ * paths in the arguments are resolved against the working directory of the client. The output of the job is sent back
+ * and the connection is closed. Sending the single argument {@value #STOP_COMMAND} stops the daemon.
+ * <p>
+ * Jobs are run one at a time, as their output is captured by replacing the standard output. A client that stops
+ * sending its job for longer than {@value #READ_TIMEOUT_MILLIS}ms is disconnected, so it can not hold up the jobs
+ * waiting behind it.
+ */
+public class Daemon {
+
+    // The job that stops the daemon
+    public static final String STOP_COMMAND = "stop";
+
+    // The longest the daemon waits for the next line of a job before dropping the connection
+    static final int READ_TIMEOUT_MILLIS = 5000;
+
+    // The options that name files, which are resolved against the working directory of the client
+    private static final String[] FILE_OPTIONS = {"<trainFile>", "--modelFile", "--testFile", "--predictFile",
+            "--oTreeFile", "--oModelFile", "--oAnalysisFile", "--oPredictFile", "--oMetricsFile"};
+
+    private final int port;
+    private final JobCache cache;
+    private byte[] token;
+
+    /**
+     * Constructor for a daemon.
+     *
+     * @param port      The local port to listen on
+     * @param cacheSize The number of data sets and models kept between jobs
+     */
+    public Daemon(int port, int cacheSize) {
+
+        this.port = port;
+        this.cache = new JobCache(cacheSize);
+    }
+
+    /**
+     * Accepts and runs jobs until the stop command is received.
+     *
+     * @throws IOException If the port can not be listened on
+     */
+    public void run() throws IOException {
+
+        try (ServerSocket serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+
+            // Only clients that can read the token file may send jobs
+            Path tokenFile = tokenFile(serverSocket.getLocalPort());
+            writeToken(tokenFile);
+            System.out.println("ID3 Builder daemon listening on " + serverSocket.getLocalSocketAddress());
+            System.out.println("Job token written to " + tokenFile);
+
+            boolean running = true;
+            while (running) {
+
+                // A broken or idle connection only fails its own job
+                try (Socket socket = serverSocket.accept()) {
+
+                    socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+                    running = runJob(socket);
+                } catch (SocketTimeoutException e) {
+                    System.out.println("Dropped a connection that sent no job for " + READ_TIMEOUT_MILLIS + "ms");
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            Files.deleteIfExists(tokenFile);
+        }
+
+        System.out.println("ID3 Builder daemon stopped");
+    }
+
+    /**
+     * Reads a job from a connection, runs it and sends its output back.
+     *
+     * @param socket The connection of the client
+     * @return False if the job was the stop command
+     * @throws IOException If the job can not be read or the output can not be sent
+     */
+    private boolean runJob(Socket socket) throws IOException {
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        PrintStream jobOut = new PrintStream(new BufferedOutputStream(socket.getOutputStream()), false, "UTF-8");
+
+        // Reject the job before reading its arguments unless it starts with the token
+        String jobToken = reader.readLine();
+        if (jobToken == null || !MessageDigest.isEqual(jobToken.getBytes(StandardCharsets.UTF_8), token)) {
+
+            jobOut.println("Job rejected: it does not have the token of this daemon");
+            jobOut.flush();
+            return true;
+        }
+
+        String workingDirectoryLine = reader.readLine();
+        if (workingDirectoryLine == null) throw new IOException("Connection closed before a job was sent");
+        Path workingDirectory = Paths.get(workingDirectoryLine);
+        String[] args = readArguments(reader);
+
+        if (args.length == 1 && args[0].equals(STOP_COMMAND)) {
+
+            jobOut.println("ID3 Builder daemon stopped");
+            jobOut.flush();
+            return false;
+        }
+
+        // Capture everything the job prints, including stack traces
+        PrintStream systemOut = System.out;
+        PrintStream systemErr = System.err;
+        System.setOut(jobOut);
+        System.setErr(jobOut);
+        try {
+
+            Map<String, Object> opts = Main.parseArguments(args, false);
+            resolveFiles(opts, workingDirectory);
+            if (opts.get("--daemon").toString().equals("true") || opts.get("--serve").toString().equals("true")) {
+
+                System.out.println("The daemon can not run a daemon or a prediction server");
+            } else {
+
+                new JobRunner(cache).run(opts);
+            }
+        } catch (DocoptExitException e) {
+
+            // Show the help, version or usage that the command line would show
+            if (e.getMessage() != null) {
+                System.out.println(e.getMessage());
+            } else {
+                System.out.println(Main.getUsage());
+            }
+        } catch (RuntimeException e) {
+
+            // A failed job must not stop the daemon
+            e.printStackTrace();
+        } finally {
+
+            System.setOut(systemOut);
+            System.setErr(systemErr);
+            jobOut.flush();
+        }
+
+        return true;
+    }
+
+    /**
+     * Replaces the relative file paths in the options of a job with absolute paths, as the daemon runs in a different
+     * working directory to the client.
+     *
+     * @param opts             The options and arguments parsed from the job
+     * @param workingDirectory The working directory of the client
+     */
+    private static void resolveFiles(Map<String, Object> opts, Path workingDirectory) {
+
+        for (String option : FILE_OPTIONS) {
+
+            Object fileName = opts.get(option);
+            if (fileName != null) opts.put(option, workingDirectory.resolve(fileName.toString()).toString());
+        }
+    }
+
+    /**
+     * Returns the file holding the token of the daemon listening on a port.
+     *
+     * @param port The local port of the daemon
+     * @return The path of the token file
+     */
+    static Path tokenFile(int port) {
+
+        return Paths.get(System.getProperty("user.home"), ".id3-builder", "daemon-" + port + ".token");
+    }
+
+    /**
+     * Creates a new random token and writes it to a file that only the user running the daemon can read. Any existing
+     * token file is replaced, and on a POSIX file system the file is created with its permissions, so it is never
+     * readable by other users.
+     *
+     * @param tokenFile The path of the token file
+     * @throws IOException If the token file can not be written
+     */
+    private void writeToken(Path tokenFile) throws IOException {
+
+        byte[] randomBytes = new byte[32];
+        new SecureRandom().nextBytes(randomBytes);
+        StringBuilder s = new StringBuilder();
+        for (byte b : randomBytes) {
+            s.append(String.format("%02x", b));
+        }
+        token = s.toString().getBytes(StandardCharsets.UTF_8);
+
+        Files.deleteIfExists(tokenFile);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+
+            Files.createDirectories(tokenFile.getParent(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            Files.createFile(tokenFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+
+            Files.createDirectories(tokenFile.getParent());
+            Files.createFile(tokenFile);
+            File file = tokenFile.toFile();
+            if (!file.setReadable(false, false) || !file.setReadable(true, true) || !file.setWritable(false, false) || !file.setWritable(true, true)) {
+                throw new IOException("Could not restrict the permissions of " + tokenFile);
+            }
+        }
+        Files.write(tokenFile, token);
+    }
+
+    /**
+     * Reads the arguments of a job.
+     *
+     * @param reader The reader of the connection
+     * @return The arguments
+     * @throws IOException If the arguments can not be read
+     */
+    private static String[] readArguments(BufferedReader reader) throws IOException {
+
+        String countLine = reader.readLine();
+        if (countLine == null) throw new IOException("Connection closed before a job was sent");
+
+        String[] args;
+        try {
+            args = new String[Integer.parseInt(countLine.trim())];
+        } catch (NumberFormatException | NegativeArraySizeException e) {
+            throw new IOException("Invalid argument count: " + countLine, e);
+        }
+
+        for (int i = 0; i < args.length; i++) {
+
+            args[i] = reader.readLine();
+            if (args[i] == null) throw new IOException("Connection closed after " + i + " of " + args.length + " arguments");
+        }
+
+        return args;
+    }
+}
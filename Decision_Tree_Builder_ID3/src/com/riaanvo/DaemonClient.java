@@ -0,0 +1,73 @@
+package com.riaanvo;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Sends a job to a running {@link Daemon} and prints its output. The first argument is the port of the daemon and the
+ * remaining arguments are the job arguments, the same as for {@link Main}. The job is sent with the token the daemon
+ * wrote for its user, so the client must be run by the same user as the daemon.
+ */
+public class DaemonClient {
+
+    /**
+     * This is the starting point of the daemon client.
+     * @param args The port of the daemon followed by the job arguments
+     */
+    public static void main(final String[] args) {
+
+        if (args.length < 1) {
+
+            System.out.println("Usage: DaemonClient <port> [job arguments...]");
+            System.exit(1);
+        }
+
+        int port = Integer.parseInt(args[0]);
+        Path tokenFile = Daemon.tokenFile(port);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+
+            // Send the token and the working directory the file arguments are relative to, then the number of job
+            // arguments followed by each argument on its own line
+            String token = new String(Files.readAllBytes(tokenFile), StandardCharsets.UTF_8);
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            writer.write(token);
+            writer.write('\n');
+            writer.write(Paths.get("").toAbsolutePath().toString());
+            writer.write('\n');
+            writer.write(Integer.toString(args.length - 1));
+            writer.write('\n');
+            for (int i = 1; i < args.length; i++) {
+
+                writer.write(args[i]);
+                writer.write('\n');
+            }
+            writer.flush();
+
+            // Print the output of the job until the daemon closes the connection
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[1 << 13];
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                System.out.write(buffer, 0, bytesRead);
+            }
+            System.out.flush();
+
+        } catch (NoSuchFileException e) {
+
+            System.out.println("No daemon token found at " + tokenFile + ", start the daemon on port " + port + " as this user");
+            System.exit(1);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package com.riaanvo;
+
+import java.util.Arrays;
+
+/**
+ * Primitive storage for a single attribute of a data set. Values are stored as value indexes using the smallest
+ * primitive type that can hold every index of the attribute, so a column of a low cardinality attribute only costs a
+ * single byte per row.
+ * <p>
+ * A column can also be a read-only view of another column, such as the binarised attributes of a data set which are
+ * each read from the column of the attribute they were created from.
+ */
+public abstract class DataColumn {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Creates an empty column wide enough to store the value indexes of an attribute with the given number of unique
+     * values. The value index '-1' (an unknown value) can always be stored.
+     *
+     * @param cardinality The number of unique values of the attribute
+     * @return An empty column
+     */
+    public static DataColumn forCardinality(int cardinality) {
+
+        // Pick the smallest primitive type able to hold the largest value index
+        if (cardinality <= Byte.MAX_VALUE + 1) return new ByteColumn(INITIAL_CAPACITY);
+        if (cardinality <= Short.MAX_VALUE + 1) return new ShortColumn(INITIAL_CAPACITY);
+        return new IntColumn(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates a read-only binarised view of a column, holding the value index 1 (true) in the rows where the source
+     * column holds the given value and 0 (false) in every other row, including rows with an unknown value.
+     *
+     * @param source            The column of the original attribute
+     * @param sourceCardinality The number of unique values of the original attribute
+     * @param value             The value index of the original attribute that is true in the view
+     * @return The binarised column
+     */
+    public static DataColumn oneHot(DataColumn source, int sourceCardinality, int value) {
+
+        return new OneHotColumn(source, sourceCardinality, value);
+    }
+
+    /**
+     * Gets the value index stored at the desired row.
+     *
+     * @param row The row of the data set
+     * @return The value index
+     */
+    public abstract int get(int row);
+
+    /**
+     * Stores the value index at the desired row. The value must fit into this column (see {@link #canHold(int)}).
+     *
+     * @param row   The row of the data set
+     * @param value The value index
+     */
+    abstract void set(int row, int value);
+
+    /**
+     * Determines if the value index can be stored in this column without overflowing the primitive type.
+     *
+     * @param value The value index
+     * @return If the value fits in this column
+     */
+    abstract boolean canHold(int value);
+
+    /**
+     * Returns the number of rows this column can store before it needs to grow.
+     *
+     * @return The column capacity
+     */
+    abstract int capacity();
+
+    /**
+     * Grows the column so that it can store at least the given number of rows.
+     *
+     * @param minCapacity The minimum number of rows to store
+     */
+    abstract void ensureCapacity(int minCapacity);
+
+    /**
+     * Creates a copy of the first rows of this column using a wider primitive type so that the value can be stored.
+     *
+     * @param value The value that the new column must be able to store
+     * @param rows  The number of rows to copy
+     * @return A wider column with the same values
+     */
+    DataColumn widen(int value, int rows) {
+
+        DataColumn column = (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+                ? new ShortColumn(capacity()) : new IntColumn(capacity());
+        for (int r = 0; r < rows; r++) {
+            column.set(r, get(r));
+        }
+        return column;
+    }
+
+    /**
+     * Calculates the next capacity of a column that needs to store the given number of rows.
+     *
+     * @param capacity    The current capacity
+     * @param minCapacity The required capacity
+     * @return The new capacity
+     */
+    static int grownCapacity(int capacity, int minCapacity) {
+
+        return Math.max(minCapacity, capacity + (capacity >> 1) + 1);
+    }
+
+    /**
+     * Column storing value indexes as bytes.
+     */
+    private static class ByteColumn extends DataColumn {
+
+        private byte[] values;
+
+        ByteColumn(int capacity) {
+            values = new byte[capacity];
+        }
+
+        public int get(int row) {
+            return values[row];
+        }
+
+        void set(int row, int value) {
+            values[row] = (byte) value;
+        }
+
+        boolean canHold(int value) {
+            return value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE;
+        }
+
+        int capacity() {
+            return values.length;
+        }
+
+        void ensureCapacity(int minCapacity) {
+            if (minCapacity > values.length) values = Arrays.copyOf(values, grownCapacity(values.length, minCapacity));
+        }
+    }
+
+    /**
+     * Column storing value indexes as shorts.
+     */
+    private static class ShortColumn extends DataColumn {
+
+        private short[] values;
+
+        ShortColumn(int capacity) {
+            values = new short[capacity];
+        }
+
+        public int get(int row) {
+            return values[row];
+        }
+
+        void set(int row, int value) {
+            values[row] = (short) value;
+        }
+
+        boolean canHold(int value) {
+            return value >= Short.MIN_VALUE && value <= Short.MAX_VALUE;
+        }
+
+        int capacity() {
+            return values.length;
+        }
+
+        void ensureCapacity(int minCapacity) {
+            if (minCapacity > values.length) values = Arrays.copyOf(values, grownCapacity(values.length, minCapacity));
+        }
+    }
+
+    /**
+     * Column storing value indexes as integers.
+     */
+    private static class IntColumn extends DataColumn {
+
+        private int[] values;
+
+        IntColumn(int capacity) {
+            values = new int[capacity];
+        }
+
+        public int get(int row) {
+            return values[row];
+        }
+
+        void set(int row, int value) {
+            values[row] = value;
+        }
+
+        boolean canHold(int value) {
+            return true;
+        }
+
+        int capacity() {
+            return values.length;
+        }
+
+        void ensureCapacity(int minCapacity) {
+            if (minCapacity > values.length) values = Arrays.copyOf(values, grownCapacity(values.length, minCapacity));
+        }
+    }
+
+    /**
+     * Read-only column that is true where a source column holds a single value. Only the source column is stored, so
+     * every binarised attribute of an original attribute shares the same storage.
+     */
+    static final class OneHotColumn extends DataColumn {
+
+        private final DataColumn source;
+        private final int sourceCardinality;
+        private final int value;
+
+        OneHotColumn(DataColumn source, int sourceCardinality, int value) {
+            this.source = source;
+            this.sourceCardinality = sourceCardinality;
+            this.value = value;
+        }
+
+        public int get(int row) {
+            return source.get(row) == value ? 1 : 0;
+        }
+
+        void set(int row, int value) {
+            throw new UnsupportedOperationException("A binarised column can not be written to");
+        }
+
+        boolean canHold(int value) {
+            return false;
+        }
+
+        int capacity() {
+            return source.capacity();
+        }
+
+        void ensureCapacity(int minCapacity) {
+            throw new UnsupportedOperationException("A binarised column can not be written to");
+        }
+
+        DataColumn getSource() {
+            return source;
+        }
+
+        int getSourceCardinality() {
+            return sourceCardinality;
+        }
+
+        int getValue() {
+            return value;
+        }
+    }
+}
@@ -2,15 +2,20 @@ package com.riaanvo;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 
 /**
  * Data Descriptor defines the current structure of the inputted data set. It allows for the conversion of string values
  * into integer values for faster comparisons and smaller storage requirements.
+ * <p>
+ * Each attribute keeps an ordered list of its unique values, used to convert value indexes back into strings, and a
+ * hash map from each value to its index so that values are encoded in constant time.
  */
 public class DataDescriptor {
 
     private final ArrayList<String> attributes;
     private final ArrayList<ArrayList<String>> uniqueAttributeValues;
+    private final ArrayList<HashMap<String, Integer>> valueIndexes;
 
     private int classAttributeIndex = 0;
     private int numberOfClasses = 0;
@@ -29,9 +34,11 @@ public class DataDescriptor {
 
         // Create arrays to store the unique data values found in the data set
         uniqueAttributeValues = new ArrayList<>();
+        valueIndexes = new ArrayList<>();
         for (int i = 0; i < attributes.length; i++) {
 
             uniqueAttributeValues.add(new ArrayList<>());
+            valueIndexes.add(new HashMap<>());
 
             // Assign the attribute index if it is denoted with a '#'
             if (attributes[i].contains("#")) {
@@ -45,13 +52,20 @@ public class DataDescriptor {
      *
      * @param attributeIndex Column index of the attribute in the data set
      * @param value          Value for that attribute
+     * @return The index of the value
      */
-    public void tryAddUniqueValue(int attributeIndex, String value) {
+    public int tryAddUniqueValue(int attributeIndex, String value) {
 
-        // Check if the unique attribute list contains the value and add if not
-        if (!uniqueAttributeValues.get(attributeIndex).contains(value)) {
-            uniqueAttributeValues.get(attributeIndex).add(value);
+        // Check if the value already has an index and add it to the unique attribute list if not
+        ArrayList<String> uniqueValues = uniqueAttributeValues.get(attributeIndex);
+        Integer valueIndex = valueIndexes.get(attributeIndex).putIfAbsent(value, uniqueValues.size());
+        if (valueIndex == null) {
+
+            uniqueValues.add(value);
+            return uniqueValues.size() - 1;
         }
+
+        return valueIndex;
     }
 
     /**
@@ -64,13 +78,37 @@ public class DataDescriptor {
 
         // Create an integer array to store all the value indexes
         int[] values = new int[attributeValues.length];
+        convertStringValuesToInt(attributeValues, values);
+
+        return values;
+    }
+
+    /**
+     * Converts the string values into integer indexes, storing them in the provided array so that it can be reused
+     * between rows.
+     *
+     * @param attributeValues The list of attribute values for the row
+     * @param values          The array to store the value indexes in
+     */
+    public void convertStringValuesToInt(String[] attributeValues, int[] values) {
 
         // Determine the index of the value based on the unique attribute values
-        for (int i = 0; i < values.length; i++) {
-            values[i] = uniqueAttributeValues.get(i).indexOf(attributeValues[i]);
+        for (int i = 0; i < attributeValues.length; i++) {
+            values[i] = valueToIndex(i, attributeValues[i]);
         }
+    }
 
-        return values;
+    /**
+     * Converts a single string value of an attribute into its value index.
+     *
+     * @param attributeIndex The attribute index from the data set
+     * @param value          The attribute value as a string
+     * @return The attribute value as an index, or '-1' if the value is unknown
+     */
+    public int valueToIndex(int attributeIndex, String value) {
+
+        Integer valueIndex = valueIndexes.get(attributeIndex).get(value);
+        return valueIndex == null ? -1 : valueIndex;
     }
 
     /**
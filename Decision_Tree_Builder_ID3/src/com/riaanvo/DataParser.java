@@ -1,22 +1,82 @@
 package com.riaanvo;
 
-import java.util.*;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This class is used to read in data sets in the comma separated value (CSV) file type and create a data descriptor
- * and a list of data elements. It can be used to extract data and generate a data descriptor or use a provided
+ * and a column based data set. It can be used to extract data and generate a data descriptor or use a provided
  * data descriptor.
+ * <p>
+ * The file is streamed through a buffered reader one row at a time and each row is encoded straight into the data set,
+ * so the raw text of the file is never held in memory as a whole.
+ * <p>
+ * In memory mapped mode the file is mapped with a file channel and the commas and new lines are found directly in the
+ * mapped bytes. Values are encoded from the byte slices through a dictionary for each attribute, so a string is only
+ * created the first time a value is seen.
+ * <p>
+ * When more than one thread is used the mapped rows are split into chunks at row boundaries and parsed concurrently,
+ * each with its own local dictionaries. The dictionaries are merged in file order afterwards, so the value indexes do
+ * not depend on the number of threads.
+ * <p>
+ * Rows can also be streamed to a {@link RowHandler} instead of being stored in a data set.
  */
 public class DataParser {
 
+    // Size of the chunks read from the file
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    // Largest region of the file that is mapped at once
+    private static final int MAP_WINDOW_SIZE = 1 << 30;
+
+    private final boolean memoryMapped;
+    private final int numberOfThreads;
     private DataDescriptor dataDescriptor;
-    private ArrayList<DataElement> dataSet;
+    private DataSet dataSet;
+
+
+    public DataParser() {
+
+        this(false);
+    }
 
+    /**
+     * Constructor for a data parser that can read files by memory mapping them.
+     *
+     * @param memoryMapped If files should be memory mapped instead of read through a buffered reader
+     */
+    public DataParser(boolean memoryMapped) {
 
-    public DataParser() {}
+        this(memoryMapped, 1);
+    }
+
+    /**
+     * Constructor for a data parser that can parse files on multiple threads. Parsing on more than one thread always
+     * memory maps the file, as each thread reads its own part of the file.
+     *
+     * @param memoryMapped    If files should be memory mapped instead of read through a buffered reader
+     * @param numberOfThreads The number of threads used to parse a file
+     */
+    public DataParser(boolean memoryMapped, int numberOfThreads) {
+
+        this.memoryMapped = memoryMapped;
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+    }
 
     /**
      * Takes in the file path of the data set and the data descriptor used
@@ -28,92 +88,571 @@ public class DataParser {
     public void parseData(String filePath, DataDescriptor dataDescriptor){
 
         this.dataDescriptor = dataDescriptor;
-        long previousTime = System.currentTimeMillis();
+        Metrics metrics = Metrics.current();
+        Metrics.Timer timer = metrics.startTimer("parse", filePath);
+        ParseEvent parseEvent = new ParseEvent();
+        parseEvent.begin();
 
         System.out.println("File to load: " + filePath);
         System.out.print("Loading data set:");
 
-        // Extract out the contents of the file
-        String trainingCSVText = extractFileContents(filePath);
+        // Stream the rows of the file into the data set
+        if (memoryMapped || numberOfThreads > 1) {
+            extractMappedDataSet(filePath, dataDescriptor);
+        } else {
+            extractDataSet(filePath, dataDescriptor);
+        }
 
-        System.out.println("\t| TIME TAKEN: " + (System.currentTimeMillis() - previousTime) + "ms");
-        previousTime = System.currentTimeMillis();
-        System.out.print("Extracting data:");
+        System.out.println("\t| TIME TAKEN: " + timer.stop() + "ms\n");
 
-        //Split into rows and extract the data elements
-        String[] rows = trainingCSVText.split("\n");
-        extractDataSet(rows, dataDescriptor);
+        // Count the rows and bytes that were read
+        long rows = dataSet != null ? dataSet.size() : 0;
+        long bytes = new File(filePath).length();
+        metrics.addCount("parse.rows", rows);
+        metrics.addCount("parse.bytes", bytes);
+        commitParseEvent(parseEvent, filePath, rows, bytes, false);
+    }
 
-        System.out.println("\t| TIME TAKEN: " + (System.currentTimeMillis() - previousTime) + "ms\n");
+    /**
+     * Streams the rows of a CSV file to a row handler without storing them, so any size of file can be processed in a
+     * constant amount of memory. The rows are encoded with the provided data descriptor, values it does not contain are
+     * given the index '-1'.
+     *
+     * @param filePath       The file path of the data set
+     * @param dataDescriptor The data descriptor to encode the data sets values
+     * @param rowHandler     The handler that receives each encoded row
+     */
+    public void streamData(String filePath, DataDescriptor dataDescriptor, RowHandler rowHandler) {
 
-    }
+        this.dataDescriptor = dataDescriptor;
+        Metrics metrics = Metrics.current();
+        Metrics.Timer timer = metrics.startTimer("stream", filePath);
+        ParseEvent parseEvent = new ParseEvent();
+        parseEvent.begin();
+
+        System.out.println("File to stream: " + filePath);
+        System.out.print("Streaming data set:");
+
+        // Attempt to open the file and pass each row on, skipping the header row
+        long rows = 0;
+        try (FileReader fr = new FileReader(filePath); BufferedReader br = new BufferedReader(fr, READ_BUFFER_SIZE)) {
+
+            br.readLine();
+            rows = encodeRows(br, true, rowHandler);
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        System.out.println("\t| TIME TAKEN: " + timer.stop() + "ms\n");
 
+        // Count the rows and bytes that were read
+        long bytes = new File(filePath).length();
+        metrics.addCount("stream.rows", rows);
+        metrics.addCount("stream.bytes", bytes);
+        commitParseEvent(parseEvent, filePath, rows, bytes, true);
+    }
 
     /**
-     * Extracts the contents of a file into a single string which is returned.
+     * Ends the flight recorder event of a parsed file and commits it if events are being recorded.
      *
-     * @param filepath File path of the CSV file to extract
-     * @return A string containing all the CSV files contents
+     * @param parseEvent The event started before the file was read
+     * @param filePath   The file path of the data set
+     * @param rows       The number of rows read
+     * @param bytes      The size of the file
+     * @param streamed   If the rows were streamed to a row handler
      */
-    private String extractFileContents(String filepath) {
+    private void commitParseEvent(ParseEvent parseEvent, String filePath, long rows, long bytes, boolean streamed) {
+
+        parseEvent.end();
+        if (!parseEvent.shouldCommit()) return;
+
+        parseEvent.filePath = filePath;
+        parseEvent.rows = rows;
+        parseEvent.bytes = bytes;
+        parseEvent.memoryMapped = !streamed && (memoryMapped || numberOfThreads > 1);
+        parseEvent.threads = streamed ? 1 : numberOfThreads;
+        parseEvent.streamed = streamed;
+        parseEvent.commit();
+    }
 
-        StringBuilder output = new StringBuilder();
+    /**
+     * Reads the CSV file row by row and encodes each row into a column based data set which can be used for data
+     * mining.
+     *
+     * @param filePath       File path of the CSV file to extract
+     * @param dataDescriptor The data descriptor used to convert the data values
+     */
+    private void extractDataSet(String filePath, DataDescriptor dataDescriptor) {
 
         // Attempt to open the file and read the data
-        try (FileReader fr = new FileReader(filepath); BufferedReader br = new BufferedReader(fr)) {
+        try (FileReader fr = new FileReader(filePath); BufferedReader br = new BufferedReader(fr, READ_BUFFER_SIZE)) {
 
-            String nextLine;
-            // Add the next line to the output string if it
-            while ((nextLine = br.readLine()) != null) {
-                output.append(nextLine).append("\n");
+            // Check if the data descriptor was given and create a new one from the header row if not
+            String headerRow = br.readLine();
+            boolean dataDescriptorPredefined = true;
+            if (dataDescriptor == null) {
+
+                this.dataDescriptor = new DataDescriptor(headerRow == null ? new String[0] : headerRow.split(","));
+                dataDescriptorPredefined = false;
             }
 
+            //Encode the rows straight into the data set columns
+            dataSet = new DataSet(this.dataDescriptor);
+            encodeRows(br, dataDescriptorPredefined, dataSet::addRow);
+
         } catch (IOException e) {
             e.printStackTrace();
         }
-
-        return output.toString();
     }
 
     /**
-     * Converts an array of string rows to a list of data elements which can be used for data mining.
+     * Reads the remaining rows of a CSV file and passes each encoded row to a row handler.
      *
-     * @param rows           An array of data values in string CSV form
-     * @param dataDescriptor The data descriptor used to convert the data values
+     * @param br                       The reader positioned after the header row
+     * @param dataDescriptorPredefined If unknown values must not be added to the data descriptor
+     * @param rowHandler               The handler that receives each encoded row
+     * @return The number of rows passed to the handler
+     * @throws IOException If the file can not be read or the handler fails
      */
-    private void extractDataSet(String[] rows, DataDescriptor dataDescriptor) {
+    private int encodeRows(BufferedReader br, boolean dataDescriptorPredefined, RowHandler rowHandler) throws IOException {
 
-        dataSet = new ArrayList<>();
+        // Reuse the same buffers for every row
+        int numberOfAttributes = dataDescriptor.getNumberOfAttributes();
+        String[] values = new String[numberOfAttributes];
+        int[] valueIndexes = new int[numberOfAttributes];
 
-        // Check if the data descriptor was given and create a new one if not
-        boolean dataDescriptorPredefined = true;
-        if (dataDescriptor == null) {
+        String row;
+        int rowNumber = 1;
+        int rowCount = 0;
+        while ((row = br.readLine()) != null) {
 
-            this.dataDescriptor = new DataDescriptor(rows[0].split(","));
-            dataDescriptorPredefined = false;
-        }
+            rowNumber++;
 
-        //Create all the data elements
-        for (int r = 1; r < rows.length; r++) {
+            // Skip any blank rows
+            if (row.isEmpty()) continue;
 
             //Split into the individual values
-            String[] values = rows[r].split(",");
+            splitRow(row, values, rowNumber);
 
             // Don't try to add the value to the attributes unique values if the descriptor exists
             if (!dataDescriptorPredefined) {
 
-                //Create the unique values  Array List
+                //Add to the unique values and take the value indexes in a single lookup
                 for (int c = 0; c < values.length; c++) {
-                    this.dataDescriptor.tryAddUniqueValue(c, values[c]);
+                    valueIndexes[c] = dataDescriptor.tryAddUniqueValue(c, values[c]);
+                }
+            } else {
+
+                dataDescriptor.convertStringValuesToInt(values, valueIndexes);
+            }
+
+            rowHandler.handleRow(valueIndexes);
+            rowCount++;
+        }
+
+        return rowCount;
+    }
+
+    /**
+     * Memory maps the CSV file and encodes each row into a column based data set, reading the values straight from the
+     * mapped bytes. If more than one thread is used the rows are split into chunks which are parsed concurrently.
+     *
+     * @param filePath       File path of the CSV file to extract
+     * @param dataDescriptor The data descriptor used to convert the data values
+     */
+    private void extractMappedDataSet(String filePath, DataDescriptor dataDescriptor) {
+
+        // Values are decoded with the same character set a file reader would use
+        Charset charset = Charset.defaultCharset();
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+
+            long fileSize = channel.size();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(fileSize, MAP_WINDOW_SIZE));
+
+            // Read the header row and create a data descriptor from it if one was not given
+            int headerEnd = findRowEnd(buffer, 0);
+            if (headerEnd == -1) headerEnd = buffer.limit();
+            boolean dataDescriptorPredefined = true;
+            if (dataDescriptor == null) {
+
+                String headerRow = decode(buffer, 0, headerEnd, charset);
+                this.dataDescriptor = new DataDescriptor(headerRow.isEmpty() ? new String[0] : headerRow.split(","));
+                dataDescriptorPredefined = false;
+            }
+
+            long dataStart = Math.min(fileSize, headerEnd + 1);
+            if (numberOfThreads > 1) {
+
+                extractDataSetInParallel(channel, dataStart, fileSize, dataDescriptorPredefined, charset);
+            } else {
+
+                dataSet = new DataSet(this.dataDescriptor);
+                extractMappedRegion(channel, dataStart, fileSize, this.dataDescriptor, dataSet, dataDescriptorPredefined, charset, 1);
+            }
+
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Encodes the rows of a region of the file into a data set. Regions larger than the map window are mapped one
+     * window at a time, starting each new window at the first row that did not fit into the previous one.
+     *
+     * @param channel                  The channel of the CSV file
+     * @param regionStart              Position in the file of the first row of the region
+     * @param regionEnd                Position in the file after the last row of the region
+     * @param dataDescriptor           The data descriptor used to convert the data values
+     * @param target                   The data set the rows are added to
+     * @param dataDescriptorPredefined If unknown values must not be added to the data descriptor
+     * @param charset                  The character set used to decode values seen for the first time
+     * @param firstRowNumber           The line number of the first row, or '0' if it is not known
+     * @throws IOException If the file can not be mapped
+     */
+    private static void extractMappedRegion(FileChannel channel, long regionStart, long regionEnd,
+                                            DataDescriptor dataDescriptor, DataSet target,
+                                            boolean dataDescriptorPredefined, Charset charset,
+                                            int firstRowNumber) throws IOException {
+
+        long windowStart = regionStart;
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(regionEnd - windowStart, MAP_WINDOW_SIZE));
+
+        // Create a byte dictionary for each attribute and reuse the same row buffer for every row
+        int numberOfAttributes = dataDescriptor.getNumberOfAttributes();
+        ByteSliceDictionary[] dictionaries = new ByteSliceDictionary[numberOfAttributes];
+        for (int a = 0; a < numberOfAttributes; a++) {
+            dictionaries[a] = new ByteSliceDictionary();
+        }
+        int[] valueIndexes = new int[numberOfAttributes];
+
+        int position = 0;
+        int rowNumber = firstRowNumber;
+        while (windowStart + position < regionEnd) {
+
+            // Find the end of the row, moving the window forward if the row runs past the end of it
+            int rowEnd = findRowEnd(buffer, position);
+            if (rowEnd == -1) {
+
+                if (windowStart + buffer.limit() < regionEnd) {
+
+                    if (position == 0) throw new IOException(rowName(rowNumber, windowStart) + " is larger than the map window");
+
+                    windowStart += position;
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(regionEnd - windowStart, MAP_WINDOW_SIZE));
+                    position = 0;
+                    continue;
+                }
+
+                rowEnd = buffer.limit();
+            }
+
+            if (rowNumber > 0) rowNumber++;
+
+            // Drop the carriage return of windows line endings and skip any blank rows
+            int valuesEnd = rowEnd;
+            if (valuesEnd > position && buffer.get(valuesEnd - 1) == '\r') valuesEnd--;
+            if (valuesEnd > position) {
+
+                encodeRow(buffer, position, valuesEnd, dictionaries, valueIndexes, dataDescriptor,
+                        dataDescriptorPredefined, charset, rowName(rowNumber, windowStart + position));
+                target.addRow(valueIndexes);
+            }
+
+            position = rowEnd + 1;
+        }
+    }
+
+    /**
+     * Splits the rows of the file into a chunk for each thread and parses the chunks concurrently. Each chunk is
+     * encoded with its own local dictionaries, which are then merged into the data descriptor in file order. This
+     * gives every value the same index it would get from parsing the file on a single thread.
+     * <p>
+     * The columns of the data set are then filled one attribute at a time, releasing the chunk columns of an attribute
+     * once they are copied, so only a single attribute is held twice rather than the whole data set.
+     *
+     * @param channel                  The channel of the CSV file
+     * @param dataStart                Position in the file of the first row after the header
+     * @param fileSize                 The size of the file
+     * @param dataDescriptorPredefined If unknown values must not be added to the data descriptor
+     * @param charset                  The character set used to decode values
+     * @throws IOException If the file can not be read
+     */
+    private void extractDataSetInParallel(FileChannel channel, long dataStart, long fileSize,
+                                          boolean dataDescriptorPredefined, Charset charset) throws IOException {
+
+        // Place the chunk boundaries at the start of rows
+        long[] chunkBounds = new long[numberOfThreads + 1];
+        chunkBounds[0] = dataStart;
+        for (int k = 1; k < numberOfThreads; k++) {
+
+            long nominalStart = dataStart + (fileSize - dataStart) * k / numberOfThreads;
+            chunkBounds[k] = Math.max(chunkBounds[k - 1], findNextRowStart(channel, nominalStart, fileSize));
+        }
+        chunkBounds[numberOfThreads] = fileSize;
+
+        // Every chunk gets a local data descriptor with the same attributes to collect its own unique values
+        String[] attributes = new String[dataDescriptor.getNumberOfAttributes()];
+        for (int a = 0; a < attributes.length; a++) {
+            attributes[a] = dataDescriptor.getAttribute(a);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads, Metrics.threadFactory());
+        try {
+
+            // Parse every chunk on a worker thread
+            List<Future<DataSet>> chunkFutures = new ArrayList<>();
+            for (int k = 0; k < numberOfThreads; k++) {
+
+                long chunkStart = chunkBounds[k];
+                long chunkEnd = chunkBounds[k + 1];
+                chunkFutures.add(executor.submit(() -> {
+
+                    DataDescriptor chunkDescriptor = new DataDescriptor(attributes);
+                    DataSet chunk = new DataSet(chunkDescriptor);
+                    extractMappedRegion(channel, chunkStart, chunkEnd, chunkDescriptor, chunk, false, charset, 0);
+                    return chunk;
+                }));
+            }
+
+            // Merge the local dictionaries of the chunks in file order, creating a map from local to final indexes.
+            // Only the columns of each chunk are kept, and the futures are released so they do not hold the chunks
+            DataColumn[][] chunkColumns = new DataColumn[numberOfThreads][attributes.length];
+            int[] chunkSizes = new int[numberOfThreads];
+            int[][][] remaps = new int[numberOfThreads][][];
+            int numberOfRows = 0;
+            for (int k = 0; k < numberOfThreads; k++) {
+
+                DataSet chunk = chunkFutures.get(k).get();
+                chunkFutures.set(k, null);
+                remaps[k] = mergeChunkDictionary(chunk.getDataDescriptor(), dataDescriptorPredefined);
+                for (int a = 0; a < attributes.length; a++) {
+                    chunkColumns[k][a] = chunk.getColumn(a);
+                }
+                chunkSizes[k] = chunk.size();
+                numberOfRows += chunkSizes[k];
+            }
+
+            // Fill each column of the data set at its final size using the final value indexes, releasing the chunk
+            // columns of the attribute once they are copied
+            DataColumn[] columns = new DataColumn[attributes.length];
+            for (int a = 0; a < columns.length; a++) {
+
+                DataColumn column = DataColumn.forCardinality(dataDescriptor.getUniqueAttributeValues(a).size());
+                column.ensureCapacity(numberOfRows);
+                int row = 0;
+                for (int k = 0; k < numberOfThreads; k++) {
+
+                    DataColumn chunkColumn = chunkColumns[k][a];
+                    int[] remap = remaps[k][a];
+                    for (int r = 0; r < chunkSizes[k]; r++) {
+                        column.set(row++, remap[chunkColumn.get(r)]);
+                    }
+                    chunkColumns[k][a] = null;
                 }
+                columns[a] = column;
+            }
+            dataSet = new DataSet(dataDescriptor, columns, numberOfRows);
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing the data set", e);
+        } catch (ExecutionException e) {
+
+            // Pass on the error of the worker that failed
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Adds the unique values found in a chunk to the data descriptor and maps each local value index of the chunk to
+     * its index in the data descriptor.
+     *
+     * @param chunkDescriptor          The local data descriptor of the chunk
+     * @param dataDescriptorPredefined If unknown values must not be added to the data descriptor
+     * @return The final value index of each local value index, for each attribute
+     */
+    private int[][] mergeChunkDictionary(DataDescriptor chunkDescriptor, boolean dataDescriptorPredefined) {
+
+        int[][] remap = new int[chunkDescriptor.getNumberOfAttributes()][];
+        for (int a = 0; a < remap.length; a++) {
+
+            ArrayList<String> chunkValues = chunkDescriptor.getUniqueAttributeValues(a);
+            remap[a] = new int[chunkValues.size()];
+            for (int v = 0; v < remap[a].length; v++) {
+
+                remap[a][v] = dataDescriptorPredefined
+                        ? dataDescriptor.valueToIndex(a, chunkValues.get(v))
+                        : dataDescriptor.tryAddUniqueValue(a, chunkValues.get(v));
             }
+        }
+
+        return remap;
+    }
 
-            //Create a new dataElement
-            dataSet.add(new DataElement(this.dataDescriptor.convertStringValuesToInt(values)));
+    /**
+     * Finds the position of the first row that starts at or after the given position.
+     *
+     * @param channel  The channel of the CSV file
+     * @param position The position to search from
+     * @param fileSize The size of the file
+     * @return The start of the next row, or the file size if there is none
+     * @throws IOException If the file can not be read
+     */
+    private static long findNextRowStart(FileChannel channel, long position, long fileSize) throws IOException {
+
+        // Start from the byte before the position, so a row starting exactly at the position is found
+        ByteBuffer block = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        long blockStart = position - 1;
+        while (blockStart < fileSize) {
+
+            // Cleared through Buffer, as ByteBuffer only overrides the method from Java 9
+            ((Buffer) block).clear();
+            int bytesRead = channel.read(block, blockStart);
+            if (bytesRead <= 0) break;
+
+            for (int i = 0; i < bytesRead; i++) {
+                if (block.get(i) == '\n') return blockStart + i + 1;
+            }
+            blockStart += bytesRead;
         }
 
-        //Set all elements data descriptors to this
-        DataElement.setDataDescriptor(this.dataDescriptor);
+        return fileSize;
+    }
+
+    /**
+     * Describes a row for error messages, using its line number if it is known and else its position in the file.
+     *
+     * @param rowNumber The line number of the row, or '0' if it is not known
+     * @param position  The position in the file of the start of the row
+     * @return A name for the row
+     */
+    private static String rowName(int rowNumber, long position) {
+
+        return rowNumber > 0 ? "Row " + rowNumber : "Row at byte " + position;
+    }
+
+    /**
+     * Finds the position of the new line that ends the row starting at the given position.
+     *
+     * @param buffer   The mapped bytes of the file
+     * @param position The position of the start of the row
+     * @return The position of the new line, or '-1' if the row is not ended within the buffer
+     */
+    private static int findRowEnd(MappedByteBuffer buffer, int position) {
+
+        int limit = buffer.limit();
+        for (int i = position; i < limit; i++) {
+            if (buffer.get(i) == '\n') return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Splits a row of mapped bytes at its commas and encodes every value into its value index.
+     *
+     * @param buffer                   The mapped bytes of the file
+     * @param rowStart                 Position of the first byte of the row
+     * @param rowEnd                   Position after the last byte of the row
+     * @param dictionaries             The byte dictionary of each attribute
+     * @param valueIndexes             The array to store the value indexes in
+     * @param dataDescriptor           The data descriptor used to convert the data values
+     * @param dataDescriptorPredefined If unknown values must not be added to the data descriptor
+     * @param charset                  The character set used to decode values seen for the first time
+     * @param rowName                  Name of the row, used for error messages
+     */
+    private static void encodeRow(MappedByteBuffer buffer, int rowStart, int rowEnd, ByteSliceDictionary[] dictionaries,
+                                  int[] valueIndexes, DataDescriptor dataDescriptor, boolean dataDescriptorPredefined,
+                                  Charset charset, String rowName) {
+
+        int start = rowStart;
+        for (int c = 0; c < valueIndexes.length; c++) {
+
+            // Find the end of this value, the last value runs to the end of the row
+            int end = start;
+            while (end < rowEnd && buffer.get(end) != ',') {
+                end++;
+            }
+            if (c == valueIndexes.length - 1) {
+
+                if (end != rowEnd) throw new IllegalArgumentException(rowName + " has more than " + valueIndexes.length + " values");
+            } else if (end == rowEnd) {
+
+                throw new IllegalArgumentException(rowName + " has fewer than " + valueIndexes.length + " values");
+            }
+
+            // Look up the value from its bytes, only creating a string the first time the value is seen
+            int valueIndex = dictionaries[c].get(buffer, start, end - start);
+            if (valueIndex == ByteSliceDictionary.NOT_FOUND) {
+
+                String value = decode(buffer, start, end, charset);
+                valueIndex = dataDescriptorPredefined
+                        ? dataDescriptor.valueToIndex(c, value)
+                        : dataDescriptor.tryAddUniqueValue(c, value);
+                dictionaries[c].put(buffer, start, end - start, valueIndex);
+            }
+
+            valueIndexes[c] = valueIndex;
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Decodes a range of the mapped bytes into a string.
+     *
+     * @param buffer  The mapped bytes of the file
+     * @param start   Position of the first byte
+     * @param end     Position after the last byte
+     * @param charset The character set of the file
+     * @return The decoded string
+     */
+    private static String decode(MappedByteBuffer buffer, int start, int end, Charset charset) {
+
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+
+        // Drop the carriage return of windows line endings
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == '\r') length--;
+
+        return new String(bytes, 0, length, charset);
+    }
+
+    /**
+     * Splits a row of comma separated values into the provided array, which must have a slot for each attribute.
+     *
+     * @param row       The row of comma separated values
+     * @param values    The array to store the values in
+     * @param rowNumber The line number of the row in the file, used for error messages
+     */
+    static void splitRow(String row, String[] values, int rowNumber) {
+
+        int start = 0;
+        for (int c = 0; c < values.length; c++) {
+
+            // Find the end of this value, the last value runs to the end of the row
+            int end = row.indexOf(',', start);
+            if (c == values.length - 1) {
+
+                if (end != -1) throw new IllegalArgumentException("Row " + rowNumber + " has more than " + values.length + " values");
+                end = row.length();
+            } else if (end == -1) {
+
+                throw new IllegalArgumentException("Row " + rowNumber + " has fewer than " + values.length + " values");
+            }
+
+            values[c] = row.substring(start, end);
+            start = end + 1;
+        }
     }
 
     /**
@@ -127,11 +666,11 @@ public class DataParser {
     }
 
     /**
-     * Returns the list of data elements extracted from the CSV.
+     * Returns the data set extracted from the CSV.
      *
-     * @return Arraylist of data elements
+     * @return The column based data set
      */
-    public ArrayList<DataElement> getDataSet() {
+    public DataSet getDataSet() {
 
         return dataSet;
     }
@@ -1,15 +1,26 @@
 package com.riaanvo;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * This class is used to pre-process the data sets uses to build and test the model. The current functionality is to
  * convert categorical data into binary attributes for simpler decisions with only true and false values.
+ * <p>
+ * Binarised attributes that can never be split on are left out. The second attribute of a two valued attribute is the
+ * complement of the first, so it always has the same information gain and loses the tie, and splitting on the first
+ * leaves it constant. The attribute of a single valued attribute is constant. The first binarised attribute is always
+ * kept, as a node where no attribute has any information gain is split on it. Which attributes are left out depends
+ * only on the number of values of each attribute, so the binarised data descriptor of a model can be defined again
+ * from the data descriptor of its input data.
  */
 public class DataPreprocessor {
 
     private DataDescriptor dataDescriptor;
-    private ArrayList<DataElement> dataSet;
+    private DataSet dataSet;
+
+    // The number of binarised attributes for each attribute of the original data descriptor
+    private int[] attributeUniqueNumbers;
+    private int oldClassIndex;
 
     public DataPreprocessor() {
     }
@@ -21,34 +32,58 @@ public class DataPreprocessor {
      * @param oldDataSet        The original data set
      * @param oldDataDescriptor The original data descriptor
      */
-    public void binariseDataSet(ArrayList<DataElement> oldDataSet, DataDescriptor oldDataDescriptor) {
+    public void binariseDataSet(DataSet oldDataSet, DataDescriptor oldDataDescriptor) {
 
-        // Store the current time for duration calculations
-        long previousTime = System.currentTimeMillis();
+        Metrics metrics = Metrics.current();
+        BinariseEvent binariseEvent = new BinariseEvent();
+        binariseEvent.begin();
+        boolean descriptorDefined = dataDescriptor == null;
 
         // If the data descriptor does not exist, create and define a new binarised data descriptor
         if (dataDescriptor == null) {
 
+            Metrics.Timer timer = metrics.startTimer("binarise.descriptor", null);
             System.out.print("Defining new data descriptor:");
-
-            dataDescriptor = new DataDescriptor(createNewHeaders(oldDataDescriptor));
-            enterUniqueValues(oldDataDescriptor);
-
-            System.out.println("\t| TIME TAKEN: " + (System.currentTimeMillis() - previousTime) + "ms");
+            defineDataDescriptor(oldDataDescriptor);
+            System.out.println("\t| TIME TAKEN: " + timer.stop() + "ms");
         }
 
-        previousTime = System.currentTimeMillis();
+        Metrics.Timer timer = metrics.startTimer("binarise", null);
         System.out.print("Converting data set:");
 
         // Convert the old data set and store it
         dataSet = convertToNewDataSet(oldDataDescriptor, oldDataSet);
 
-        System.out.println("\t| TIME TAKEN: " + (System.currentTimeMillis() - previousTime) + "ms\n");
+        System.out.println("\t| TIME TAKEN: " + timer.stop() + "ms\n");
+        metrics.addCount("binarise.rows", dataSet.size());
+
+        binariseEvent.end();
+        if (binariseEvent.shouldCommit()) {
+
+            binariseEvent.rows = dataSet.size();
+            binariseEvent.attributes = oldDataDescriptor.getNumberOfAttributes();
+            binariseEvent.binarisedAttributes = dataDescriptor.getNumberOfAttributes();
+            binariseEvent.descriptorDefined = descriptorDefined;
+            binariseEvent.commit();
+        }
+    }
+
+    /**
+     * Creates the binarised data descriptor for an original data descriptor without converting a data set. Rows can
+     * then be converted with {@link #binariseRow(int[], int[])}.
+     *
+     * @param oldDataDescriptor The original data descriptor
+     */
+    public void defineDataDescriptor(DataDescriptor oldDataDescriptor) {
+
+        countAttributeUniqueNumbers(oldDataDescriptor);
+        dataDescriptor = new DataDescriptor(createNewHeaders(oldDataDescriptor));
+        enterUniqueValues(oldDataDescriptor);
     }
 
     /**
      * Takes in a data descriptor and for every categorical attribute it creates binarised headers for every unique
-     * value.
+     * value that is kept.
      *
      * @param baseDataDescriptor Original data descriptor
      * @return Attribute names for a new data descriptor
@@ -57,17 +92,8 @@ public class DataPreprocessor {
 
         // Count the new number of attributes the data descriptor will have
         int totalNumAttributes = 0;
-        for (int i = 0; i < baseDataDescriptor.getNumberOfAttributes(); i++) {
-
-            // If the current attribute is the class, only at a single attribute to the headers
-            if (i == baseDataDescriptor.getClassAttributeIndex()) {
-
-                totalNumAttributes++;
-                continue;
-            }
-
-            // Add the number of unique values as each will become an attribute itself
-            totalNumAttributes += baseDataDescriptor.getUniqueAttributeValues(i).size();
+        for (int numberOfBinarisedAttributes : attributeUniqueNumbers) {
+            totalNumAttributes += numberOfBinarisedAttributes;
         }
 
         String[] newHeaders = new String[totalNumAttributes];
@@ -83,8 +109,8 @@ public class DataPreprocessor {
                 currentIndex++;
             } else {
 
-                // Loop through all the base attributes values and create new specific headers
-                for (int ua = 0; ua < baseDataDescriptor.getUniqueAttributeValues(a).size(); ua++) {
+                // Loop through the base attributes values that are kept and create new specific headers
+                for (int ua = 0; ua < attributeUniqueNumbers[a]; ua++) {
 
                     newHeaders[currentIndex] = baseDataDescriptor.getAttribute(a) + " = " + baseDataDescriptor.getUniqueAttributeValues(a).get(ua);
                     currentIndex++;
@@ -123,68 +149,135 @@ public class DataPreprocessor {
     }
 
     /**
-     * Takes in a data descriptor and the old data set and uses the new data descriptor to convert the data elements
-     * into values for the new data descriptor.
+     * Takes in a data descriptor and the old data set and creates a binarised view of the old data set for the new data
+     * descriptor. No rows are copied: every binarised attribute reads the column of the attribute it was created from,
+     * so the binarised data set takes no more memory than the old one and shares its rows.
      *
      * @param baseDataDescriptor The original data descriptor
-     * @param oldDataElements    The original data set
+     * @param oldDataSet         The original data set
      * @return The binarised data set
      */
-    private ArrayList<DataElement> convertToNewDataSet(DataDescriptor baseDataDescriptor, ArrayList<DataElement> oldDataElements) {
+    private DataSet convertToNewDataSet(DataDescriptor baseDataDescriptor, DataSet oldDataSet) {
 
-        // Loop through the old data descriptor and count the number of values in each attribute
-        int[] attributeUniqueNumbers = new int[baseDataDescriptor.getNumberOfAttributes()];
-        for (int i = 0; i < baseDataDescriptor.getNumberOfAttributes(); i++) {
+        DataColumn[] newColumns = new DataColumn[dataDescriptor.getNumberOfAttributes()];
 
-            // If it is the class attribute
-            if (i == baseDataDescriptor.getClassAttributeIndex()) {
+        // Loop through the old attributes and create the columns of the binarised attributes made from each one
+        int currentIndex = 0;
+        for (int a = 0; a < baseDataDescriptor.getNumberOfAttributes(); a++) {
 
-                attributeUniqueNumbers[i] = 1;
-                continue;
+            DataColumn oldColumn = oldDataSet.getColumn(a);
+
+            // The class column is used as it is, every other value of an attribute becomes a true/false column
+            if (a == oldClassIndex) {
+
+                newColumns[currentIndex] = oldColumn;
+            } else {
+
+                int numberOfValues = baseDataDescriptor.getUniqueAttributeValues(a).size();
+                for (int v = 0; v < attributeUniqueNumbers[a]; v++) {
+                    newColumns[currentIndex + v] = DataColumn.oneHot(oldColumn, numberOfValues, v);
+                }
             }
-            attributeUniqueNumbers[i] = baseDataDescriptor.getUniqueAttributeValues(i).size();
+
+            // Increment by the number of vales in the old attribute
+            currentIndex += attributeUniqueNumbers[a];
         }
 
-        // Create a list to hold the new data set
-        ArrayList<DataElement> newDataSet = new ArrayList<DataElement>();
+        return new DataSet(dataDescriptor, newColumns, oldDataSet.size());
+    }
 
-        // Store local values to reduce outer calls
-        int newNumberOfAttributes = dataDescriptor.getNumberOfAttributes();
-        int oldNumberOfAttributes = baseDataDescriptor.getNumberOfAttributes();
-        int oldClassIndex = baseDataDescriptor.getClassAttributeIndex();
+    /**
+     * Converts a single row of the original data descriptor into a row of the binarised data descriptor. The binarised
+     * data descriptor must have been defined first, by binarising a data set or with
+     * {@link #defineDataDescriptor(DataDescriptor)}. An unknown value sets every binarised attribute of its attribute to
+     * false, as does a value whose binarised attribute was left out.
+     *
+     * @param oldValues The value indexes of the original row
+     * @param newValues The array to store the binarised value indexes in
+     */
+    public void binariseRow(int[] oldValues, int[] newValues) {
 
-        // Loop through each data element and convert the values to the new data descriptor
-        for (DataElement dataElement : oldDataElements) {
+        // Clear the array used to store the new values of this row
+        Arrays.fill(newValues, 0);
 
-            // Create an array to store the new values of this data element
-            int[] newValues = new int[newNumberOfAttributes];
+        // Loop through the older data values and insert them into the new data values
+        int currentIndex = 0;
+        for (int a = 0; a < oldValues.length; a++) {
 
-            // Loop through the older data values and insert them into the new data values
-            int currentIndex = 0;
-            for (int a = 0; a < oldNumberOfAttributes; a++) {
+            // If the current value is the class value, store that value
+            if (a == oldClassIndex) {
 
-                // If the current value is the class value, store that value
-                if (a == oldClassIndex) {
+                newValues[currentIndex] = oldValues[a];
+            } else {
 
-                    newValues[currentIndex] = dataElement.getValue(a);
-                } else {
+                // Set the value in the correct spot to 1 to signify true, unless the value is unknown or left out
+                if (oldValues[a] >= 0 && oldValues[a] < attributeUniqueNumbers[a]) newValues[currentIndex + oldValues[a]] = 1;
+            }
 
-                    // Set the value in the correct spot to 1 to signify true
-                    newValues[currentIndex + dataElement.getValue(a)] = 1;
-                }
+            // Increment by the number of vales in the old attribute
+            currentIndex += attributeUniqueNumbers[a];
+        }
+    }
 
-                // Increment by the number of vales in the old attribute
-                currentIndex += attributeUniqueNumbers[a];
-            }
+    /**
+     * Creates a stage of a row pipeline that binarises each row passed through it before handing it to the next stage.
+     * Rows streamed from a file are then converted as they are read, without storing either data set. The binarised
+     * data descriptor must have been defined first.
+     *
+     * @param next The stage that receives the binarised rows
+     * @return The binarising stage
+     */
+    public RowHandler binarisingStage(RowHandler next) {
+
+        // The same binarised row is passed on every time, as the stages must not keep the rows they are given
+        int[] binarisedRow = new int[dataDescriptor.getNumberOfAttributes()];
+        return row -> {
+
+            binariseRow(row, binarisedRow);
+            next.handleRow(binarisedRow);
+        };
+    }
+
+    /**
+     * Counts the number of binarised attributes each attribute of the old data descriptor is converted into.
+     *
+     * @param baseDataDescriptor The original data descriptor
+     */
+    private void countAttributeUniqueNumbers(DataDescriptor baseDataDescriptor) {
+
+        // Loop through the old data descriptor and count the number of values in each attribute
+        oldClassIndex = baseDataDescriptor.getClassAttributeIndex();
+        attributeUniqueNumbers = new int[baseDataDescriptor.getNumberOfAttributes()];
+        for (int i = 0; i < baseDataDescriptor.getNumberOfAttributes(); i++) {
 
-            // Create a new data element and store it in the new data set
-            newDataSet.add(new DataElement(newValues));
+            // If it is the class attribute
+            if (i == oldClassIndex) {
+
+                attributeUniqueNumbers[i] = 1;
+                continue;
+            }
+            attributeUniqueNumbers[i] = countKeptValues(baseDataDescriptor, i);
         }
+    }
+
+    /**
+     * Counts the values of an attribute that are kept as binarised attributes. The kept values are always the first
+     * values of the attribute, so value v is kept if it is less than the count.
+     *
+     * @param baseDataDescriptor The original data descriptor
+     * @param attributeIndex     An attribute other than the class
+     * @return The number of values of the attribute that are kept
+     */
+    static int countKeptValues(DataDescriptor baseDataDescriptor, int attributeIndex) {
+
+        int numberOfValues = baseDataDescriptor.getUniqueAttributeValues(attributeIndex).size();
 
-        // Set the data descriptor for the data elements
-        DataElement.setDataDescriptor(dataDescriptor);
+        // Leave out the complement of a two valued attribute and the constant of a single valued one, unless it is
+        // the first binarised attribute
+        if (numberOfValues == 2) return 1;
+        if (numberOfValues == 1) return attributeIndex == 0 ? 1 : 0;
 
-        return newDataSet;
+        return numberOfValues;
     }
 
     /**
@@ -198,11 +291,11 @@ public class DataPreprocessor {
     }
 
     /**
-     * Returns the list of data elements extracted from the CSV.
+     * Returns the binarised data set.
      *
-     * @return Arraylist of data elements
+     * @return The column based data set
      */
-    public ArrayList<DataElement> getDataSet() {
+    public DataSet getDataSet() {
 
         return dataSet;
     }
@@ -0,0 +1,153 @@
+package com.riaanvo;
+
+/**
+ * Column based storage of a data set. Every attribute is stored in its own primitive column of value indexes, which
+ * keeps the data set small in memory and allows a single attribute to be scanned without touching the others.
+ */
+public class DataSet {
+
+    private final DataDescriptor dataDescriptor;
+    private final DataColumn[] columns;
+    private int size = 0;
+
+    /**
+     * Constructor for creating an empty data set. The width of each column is picked from the number of unique values
+     * the data descriptor currently holds for that attribute.
+     *
+     * @param dataDescriptor The data descriptor describing the rows of this data set
+     */
+    public DataSet(DataDescriptor dataDescriptor) {
+
+        this.dataDescriptor = dataDescriptor;
+
+        // Create a column for every attribute in the data set
+        columns = new DataColumn[dataDescriptor.getNumberOfAttributes()];
+        for (int a = 0; a < columns.length; a++) {
+            columns[a] = DataColumn.forCardinality(dataDescriptor.getUniqueAttributeValues(a).size());
+        }
+    }
+
+    /**
+     * Constructor for creating a data set from columns that are already filled, such as views of another data set.
+     *
+     * @param dataDescriptor The data descriptor describing the rows of this data set
+     * @param columns        The column of every attribute
+     * @param size           The number of rows in the columns
+     */
+    DataSet(DataDescriptor dataDescriptor, DataColumn[] columns, int size) {
+
+        this.dataDescriptor = dataDescriptor;
+        this.columns = columns;
+        this.size = size;
+    }
+
+    /**
+     * Adds a row of value indexes to the end of the data set.
+     *
+     * @param values The value indexes of the row, one for each attribute
+     */
+    public void addRow(int[] values) {
+
+        for (int a = 0; a < columns.length; a++) {
+
+            DataColumn column = columns[a];
+            column.ensureCapacity(size + 1);
+
+            // Widen the column if the value index no longer fits its primitive type
+            if (!column.canHold(values[a])) {
+                column = column.widen(values[a], size);
+                columns[a] = column;
+            }
+
+            column.set(size, values[a]);
+        }
+        size++;
+    }
+
+    /**
+     * Gets the value index of an attribute for the desired row.
+     *
+     * @param row            The row of the data set
+     * @param attributeIndex Attribute index of the desired value
+     * @return The index value for that attribute
+     */
+    public int getValue(int row, int attributeIndex) {
+
+        return columns[attributeIndex].get(row);
+    }
+
+    /**
+     * Returns the column holding all the value indexes of an attribute.
+     *
+     * @param attributeIndex The index of the attribute
+     * @return The column of value indexes
+     */
+    public DataColumn getColumn(int attributeIndex) {
+
+        return columns[attributeIndex];
+    }
+
+    /**
+     * Returns the number of rows in the data set.
+     *
+     * @return The number of rows
+     */
+    public int size() {
+
+        return size;
+    }
+
+    /**
+     * Returns the data descriptor used to decode the values of this data set.
+     *
+     * @return The data descriptor
+     */
+    public DataDescriptor getDataDescriptor() {
+
+        return dataDescriptor;
+    }
+
+    /**
+     * Returns a string list of all the value indexes stored in a row.
+     *
+     * @param row The row of the data set
+     * @return String of data value indexes
+     */
+    public String rowToStringInts(int row) {
+
+        StringBuilder s = new StringBuilder();
+        for (int a = 0; a < columns.length; a++) {
+
+            s.append(columns[a].get(row));
+
+            // Add a comma if it is not the last value
+            if (a != columns.length - 1) {
+                s.append(", ");
+            }
+        }
+
+        return s.toString();
+    }
+
+    /**
+     * Returns the values of a row as a string of attribute values separated by commas.
+     *
+     * @param row The row of the data set
+     * @return A row as a string of values
+     */
+    public String rowToString(int row) {
+
+        StringBuilder s = new StringBuilder();
+        for (int a = 0; a < columns.length; a++) {
+
+            s.append(dataDescriptor.indexToValue(a, columns[a].get(row)));
+
+            // Add a comma if it is not the last value
+            if (a != columns.length - 1) {
+                s.append(", ");
+            }
+        }
+
+        return s.toString();
+    }
+}
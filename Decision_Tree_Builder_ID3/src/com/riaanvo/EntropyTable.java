@@ -0,0 +1,89 @@
+package com.riaanvo;
+
+/**
+ * Calculates entropies from integer class counts using a table of n*log2(n). The entropy of a set of n samples with
+ * class counts n_c is (n*log2(n) - sum of n_c*log2(n_c)) / n, so once the table is built no logarithms are taken while
+ * a tree is scored. The weighted entropy of a subset, which is what a split is scored by, is the same expression
+ * without the division by the subset size.
+ * <p>
+ * The table is built once per tree and shared by every node and worker thread, as it is never written to after it is
+ * built. Counts larger than the table are calculated directly.
+ */
+class EntropyTable {
+
+    // The largest table that is built, in entries, so very large training sets do not need a very large table
+    private static final int MAX_TABLE_SIZE = 1 << 20;
+
+    private static final double LOG_2 = Math.log(2);
+
+    private final double[] nLogN;
+
+    /**
+     * Constructor for a table covering the counts of a training data set.
+     *
+     * @param maxCount The largest count that will be looked up, normally the number of training samples
+     */
+    EntropyTable(int maxCount) {
+
+        nLogN = new double[Math.min(Math.max(maxCount, 1), MAX_TABLE_SIZE - 1) + 1];
+        for (int n = 1; n < nLogN.length; n++) {
+            nLogN[n] = calculateNLogN(n);
+        }
+    }
+
+    /**
+     * Returns n*log2(n), which is defined as 0 for a count of 0.
+     *
+     * @param n The count
+     * @return n*log2(n)
+     */
+    double nLogN(int n) {
+
+        return n < nLogN.length ? nLogN[n] : calculateNLogN(n);
+    }
+
+    /**
+     * Calculates the entropy of a set of samples from its class counts.
+     *
+     * @param classCounts     Array containing the class counts
+     * @param offset          Index of the first class count in the array
+     * @param numberOfClasses The number of class counts
+     * @param sampleSize      The number of samples in the set
+     * @return The entropy of the set of samples
+     */
+    double entropy(int[] classCounts, int offset, int numberOfClasses, int sampleSize) {
+
+        if (sampleSize == 0) return 0;
+
+        return weightedEntropy(classCounts, offset, numberOfClasses, sampleSize) / sampleSize;
+    }
+
+    /**
+     * Calculates the entropy of a set of samples multiplied by its size. Dividing the sum of these over the subsets of
+     * a split by the size of the node gives the entropy of the split.
+     *
+     * @param classCounts     Array containing the class counts
+     * @param offset          Index of the first class count in the array
+     * @param numberOfClasses The number of class counts
+     * @param sampleSize      The number of samples in the set
+     * @return The entropy of the set of samples multiplied by its size
+     */
+    double weightedEntropy(int[] classCounts, int offset, int numberOfClasses, int sampleSize) {
+
+        double classSum = 0;
+        for (int c = 0; c < numberOfClasses; c++) {
+            classSum += nLogN(classCounts[offset + c]);
+        }
+
+        return nLogN(sampleSize) - classSum;
+    }
+
+    /**
+     * @param n The count
+     * @return n*log2(n), or 0 if n is 0
+     */
+    private static double calculateNLogN(int n) {
+
+        return n == 0 ? 0 : n * (Math.log(n) / LOG_2);
+    }
+}
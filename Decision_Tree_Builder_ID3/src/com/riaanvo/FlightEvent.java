@@ -0,0 +1,132 @@
+package com.riaanvo;
+
+/**
+ * Base of the flight recorder events of the builder. The events are recorded by the JDK Flight Recorder through the
+ * classes in the jfr source folder, which are compiled for Java 11 as the flight recorder API is not part of Java 8.
+ * On a JVM that can not load them the events do nothing, so the builder still runs on Java 8.
+ * <p>
+ * An event is used like a flight recorder event: it is begun, ended, and if {@link #shouldCommit()} its fields are set
+ * and it is committed. Events created very often, such as one for every node of a tree, are only created when
+ * {@link #isEnabled(Class)} shows they are being recorded.
+ */
+abstract class FlightEvent {
+
+    // The name of the class that creates the flight recorder events
+    private static final String RECORDER_CLASS = "com.riaanvo.JfrRecorder";
+
+    // Creates the flight recorder events, or null if the flight recorder is not available
+    private static final Recorder recorder = loadRecorder();
+
+    private final Recording recording;
+
+    FlightEvent() {
+
+        recording = recorder == null ? null : createRecording(recorder);
+    }
+
+    /**
+     * Creates the flight recorder event that records this event.
+     *
+     * @param recorder The recorder of the flight recorder events
+     * @return The flight recorder event
+     */
+    abstract Recording createRecording(Recorder recorder);
+
+    /**
+     * Starts timing the event.
+     */
+    void begin() {
+
+        if (recording != null) recording.begin();
+    }
+
+    /**
+     * Stops timing the event.
+     */
+    void end() {
+
+        if (recording != null) recording.end();
+    }
+
+    /**
+     * Returns if the event is being recorded, so its fields need to be set and it needs to be committed.
+     *
+     * @return If the event should be committed
+     */
+    boolean shouldCommit() {
+
+        return recording != null && recording.shouldCommit();
+    }
+
+    /**
+     * Records the event with the values of its fields.
+     */
+    void commit() {
+
+        if (recording != null) recording.commit(this);
+    }
+
+    /**
+     * Returns if a kind of event is being recorded. When it is not, creating and committing such events does nothing.
+     *
+     * @param eventClass The class of the event
+     * @return If events of the class are being recorded
+     */
+    static boolean isEnabled(Class<? extends FlightEvent> eventClass) {
+
+        return recorder != null && recorder.isEnabled(eventClass);
+    }
+
+    /**
+     * Loads the recorder of the flight recorder events.
+     *
+     * @return The recorder, or null if its classes can not be loaded on this JVM or the flight recorder is not available
+     */
+    private static Recorder loadRecorder() {
+
+        try {
+            return (Recorder) Class.forName(RECORDER_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates the flight recorder event of each kind of event.
+     */
+    interface Recorder {
+
+        Recording createParseRecording();
+
+        Recording createBinariseRecording();
+
+        Recording createNodeBuildRecording();
+
+        /**
+         * Returns if the flight recorder event of a kind of event is enabled in a running recording.
+         *
+         * @param eventClass The class of the event
+         * @return If events of the class are being recorded
+         */
+        boolean isEnabled(Class<? extends FlightEvent> eventClass);
+    }
+
+    /**
+     * A flight recorder event recording one event.
+     */
+    interface Recording {
+
+        void begin();
+
+        void end();
+
+        boolean shouldCommit();
+
+        /**
+         * Copies the fields of the event and commits the flight recorder event.
+         *
+         * @param event The event being recorded
+         */
+        void commit(FlightEvent event);
+    }
+}
@@ -1,18 +1,46 @@
 package com.riaanvo;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * This class contains the ID3 model and allows the testing and printing of the model.
  */
 public class ID3 {
 
+    // The default minimum number of samples for a sub tree to be built as a separate parallel task
+    public static final int DEFAULT_PARALLEL_CUTOFF = 1000;
+
+    // The number of test rows below which a range of the test data set is classified by a single worker
+    private static final int TEST_CHUNK_SIZE = 1 << 16;
+
     //Used for determining the decision tree structure
     private int currentNodeIndex = 0;
     private final int maxNodeDepth;
+    private final int numberOfThreads;
+    private final int parallelCutoff;
+    private final boolean binarySplits;
 
     private final DataDescriptor dataDescriptor;
+    private DataSet trainingData;
+    private int[] sampleRows;
+    private EntropyTable entropyTable;
+
+    // If a flight recording of node builds was running when the build started, checked once rather than per node
+    private boolean recordNodeBuilds;
+
+    // The attribute and value of every candidate split, a value of -1 splitting on every value of the attribute
+    private int[] candidateAttributes;
+    private int[] candidateValues;
+    private ForkJoinPool pool;
+    private final ConcurrentLinkedQueue<SplitEvaluator> splitEvaluators = new ConcurrentLinkedQueue<>();
     private Node rootNode;
+    private CompiledTree compiledTree;
     private final String decFormat = "%.3f";
 
     /**
@@ -21,43 +49,275 @@ public class ID3 {
      * @param trainingData Data set to build the model with
      * @param maxNodeDepth The max node depth of the tree
      */
-    public ID3(ArrayList<DataElement> trainingData, int maxNodeDepth) {
+    public ID3(DataSet trainingData, int maxNodeDepth) {
+
+        this(trainingData, maxNodeDepth, 1);
+    }
+
+    /**
+     * Constructor for the ID3 model which scores the candidate attributes of each node concurrently. The tree that is
+     * built is identical to the tree built on a single thread.
+     * @param trainingData    Data set to build the model with
+     * @param maxNodeDepth    The max node depth of the tree
+     * @param numberOfThreads The number of threads used to build the tree
+     */
+    public ID3(DataSet trainingData, int maxNodeDepth, int numberOfThreads) {
 
-        this.dataDescriptor = DataElement.getDataDescriptor();
+        this(trainingData, maxNodeDepth, numberOfThreads, DEFAULT_PARALLEL_CUTOFF);
+    }
+
+    /**
+     * Constructor for the ID3 model which builds the tree on multiple threads. The candidate attributes of each node
+     * are scored concurrently and sub trees with at least the cutoff number of samples are built as separate fork/join
+     * tasks. Smaller sub trees are built serially by the thread that creates them. The tree that is built is identical
+     * to the tree built on a single thread.
+     * @param trainingData    Data set to build the model with
+     * @param maxNodeDepth    The max node depth of the tree
+     * @param numberOfThreads The number of threads used to build the tree
+     * @param parallelCutoff  The minimum number of samples for a sub tree to be built as a separate task
+     */
+    public ID3(DataSet trainingData, int maxNodeDepth, int numberOfThreads, int parallelCutoff) {
+
+        this(trainingData, maxNodeDepth, numberOfThreads, parallelCutoff, false);
+    }
+
+    /**
+     * Constructor for the ID3 model which can build a binary tree. In binary split mode every node splits its samples
+     * on whether an attribute has a single value, scored from the same contingency table as a split on every value of
+     * the attribute. Each attribute value can be split on once along a path, so the tree is the one built from the
+     * binarised data set, without the binarised columns being created.
+     * @param trainingData    Data set to build the model with
+     * @param maxNodeDepth    The max node depth of the tree
+     * @param numberOfThreads The number of threads used to build the tree
+     * @param parallelCutoff  The minimum number of samples for a sub tree to be built as a separate task
+     * @param binarySplits    If each node splits on a single attribute value against the rest
+     */
+    public ID3(DataSet trainingData, int maxNodeDepth, int numberOfThreads, int parallelCutoff, boolean binarySplits) {
+
+        this.dataDescriptor = trainingData.getDataDescriptor();
         this.maxNodeDepth = maxNodeDepth;
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+        this.parallelCutoff = parallelCutoff;
+        this.binarySplits = binarySplits;
         buildModel(trainingData);
     }
 
+    /**
+     * Constructor for an ID3 model that has already been built, such as one loaded from a model file. Only the
+     * compiled tree is available, so the tree diagram can not be created.
+     * @param dataDescriptor  The data descriptor of the data set the model was built with
+     * @param compiledTree    The compiled decision tree
+     * @param numberOfThreads The number of threads used to test the model
+     */
+    ID3(DataDescriptor dataDescriptor, CompiledTree compiledTree, int numberOfThreads) {
+
+        this.dataDescriptor = dataDescriptor;
+        this.compiledTree = compiledTree;
+        this.maxNodeDepth = -1;
+        this.numberOfThreads = Math.max(1, numberOfThreads);
+        this.parallelCutoff = DEFAULT_PARALLEL_CUTOFF;
+        this.binarySplits = false;
+    }
+
     /**
      * This method builds the ID3 model using the provided training data.
      *
-     * @param trainingData List of data elements in the training data set
+     * @param trainingData The training data set
      */
-    private void buildModel(ArrayList<DataElement> trainingData) {
+    private void buildModel(DataSet trainingData) {
 
-        // Store the starting time of model construction
-        long previousTime = System.currentTimeMillis();
+        // Time the model construction
+        Metrics metrics = Metrics.current();
+        Metrics.Timer timer = metrics.startTimer("build", null);
         System.out.print("Building ID3 Tree:");
 
-        // Reset node indexing if a new model is built
+        this.trainingData = trainingData;
+        int classCandidate = defineCandidateSplits();
+
+        // Create a bit set to mark which candidate splits have been used, starting with only the class attribute set
+        BitSet usedAttributes = new BitSet(candidateAttributes.length);
+        usedAttributes.set(classCandidate);
+
+        // Create the shared array of sample row indexes. Each node owns a range of this array which is partitioned in
+        // place when the node is split, so no copies of the samples are made while the tree is built
+        sampleRows = new int[trainingData.size()];
+        for (int r = 0; r < sampleRows.length; r++) {
+            sampleRows[r] = r;
+        }
+
+        // Create the n*log2(n) table shared by every node of the tree
+        entropyTable = new EntropyTable(trainingData.size());
+
+        // Only create the flight recorder events of the nodes if they are being recorded
+        recordNodeBuilds = FlightEvent.isEnabled(NodeBuildEvent.class);
+
+        // Create and store the root node of the model. This will recursively construct the decision tree, using a pool
+        // of workers if the tree is to be built on more than one thread
+        if (numberOfThreads > 1) {
+
+            pool = new ForkJoinPool(numberOfThreads, Metrics.forkJoinThreadFactory(), null, false);
+            try {
+                rootNode = pool.invoke(new SubTreeTask(0, sampleRows.length, null, usedAttributes, 0));
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+
+            rootNode = new Node(0, sampleRows.length, null, usedAttributes, 0);
+        }
+
+        // Number the nodes once the tree is complete, as sub trees may have been built in any order
         currentNodeIndex = 0;
+        rootNode.assignNodeIndexes();
+
+        // Freeze the tree into flat arrays for classification
+        compiledTree = compileTree();
+
+        // Release the training data once the tree is built
+        this.trainingData = null;
+        sampleRows = null;
+        entropyTable = null;
+        candidateAttributes = null;
+        candidateValues = null;
+        pool = null;
+        splitEvaluators.clear();
+
+        System.out.println("\t| TIME TAKEN: " + timer.stop() + "ms\n");
+        metrics.addCount("build.rows", trainingData.size());
+        metrics.addCount("build.nodes", compiledTree.getNumberOfNodes());
+    }
+
+    /**
+     * Lists the candidate splits of the tree. Without binary splits there is a candidate for every attribute, split on
+     * every value. With binary splits there is a candidate for every value of every attribute other than the class
+     * that the preprocessor keeps as a binarised attribute, numbered in the same order as the attributes of the
+     * binarised data descriptor, so ties between splits are broken the same way as on a binarised data set.
+     *
+     * @return The index of the class attribute's candidate, which is never split on
+     */
+    private int defineCandidateSplits() {
 
-        // Create a string to contain indicators of which attributes have been used (Not needed for categorical data)
-        StringBuilder attributesLeft = new StringBuilder();
-        for (int i = 0; i < dataDescriptor.getNumberOfAttributes(); i++) {
+        int numberOfAttributes = dataDescriptor.getNumberOfAttributes();
+        int classIndex = dataDescriptor.getClassAttributeIndex();
+        int numberOfCandidates = 0;
+        for (int a = 0; a < numberOfAttributes; a++) {
+            numberOfCandidates += binarySplits && a != classIndex ? DataPreprocessor.countKeptValues(dataDescriptor, a) : 1;
+        }
 
-            // If the index is the class attribute set it to one
-            if (dataDescriptor.getClassAttributeIndex() == i) {
-                attributesLeft.append("1");
-            } else {
-                attributesLeft.append("0");
+        candidateAttributes = new int[numberOfCandidates];
+        candidateValues = new int[numberOfCandidates];
+        int classCandidate = 0;
+        int nextCandidate = 0;
+        for (int a = 0; a < numberOfAttributes; a++) {
+
+            // The class attribute, and every attribute without binary splits, is a single candidate
+            if (!binarySplits || a == classIndex) {
+
+                if (a == classIndex) classCandidate = nextCandidate;
+                candidateAttributes[nextCandidate] = a;
+                candidateValues[nextCandidate++] = -1;
+                continue;
+            }
+
+            for (int v = 0; v < DataPreprocessor.countKeptValues(dataDescriptor, a); v++) {
+
+                candidateAttributes[nextCandidate] = a;
+                candidateValues[nextCandidate++] = v;
+            }
+        }
+
+        return classCandidate;
+    }
+
+    /**
+     * Finds the attributes that do not need to be counted for a node. With binary splits an attribute is only counted
+     * if at least one of its values can still be split on.
+     *
+     * @param usedAttributes Bit set marking the candidate splits that can no longer be used
+     * @return Bit set marking the attributes that are not counted
+     */
+    private BitSet findUncountedAttributes(BitSet usedAttributes) {
+
+        if (!binarySplits) return usedAttributes;
+
+        BitSet uncountedAttributes = new BitSet(dataDescriptor.getNumberOfAttributes());
+        uncountedAttributes.set(0, dataDescriptor.getNumberOfAttributes());
+        for (int i = usedAttributes.nextClearBit(0); i < candidateAttributes.length; i = usedAttributes.nextClearBit(i + 1)) {
+            uncountedAttributes.clear(candidateAttributes[i]);
+        }
+
+        return uncountedAttributes;
+    }
+
+    /**
+     * Takes a split evaluator that is not in use, creating a new one if they are all in use by other threads.
+     *
+     * @return A split evaluator for the training data set
+     */
+    private SplitEvaluator acquireSplitEvaluator() {
+
+        SplitEvaluator splitEvaluator = splitEvaluators.poll();
+        if (splitEvaluator == null) {
+            splitEvaluator = new SplitEvaluator(trainingData, entropyTable, pool);
+        }
+
+        return splitEvaluator;
+    }
+
+    /**
+     * Returns a split evaluator so that it can be reused for scoring other nodes.
+     *
+     * @param splitEvaluator The split evaluator that is no longer in use
+     */
+    private void releaseSplitEvaluator(SplitEvaluator splitEvaluator) {
+
+        splitEvaluators.add(splitEvaluator);
+    }
+
+    /**
+     * Flattens the tree of nodes into a compiled tree. Nodes are laid out breadth first so that the sub nodes of every
+     * node are next to each other in value order, or in false, true order for a binary split.
+     *
+     * @return The compiled tree
+     */
+    private CompiledTree compileTree() {
+
+        int numberOfNodes = currentNodeIndex;
+        int[] splitAttributes = new int[numberOfNodes];
+        int[] splitValues = new int[numberOfNodes];
+        int[] firstSubNodes = new int[numberOfNodes];
+        int[] nodeClasses = new int[numberOfNodes];
+
+        // Walk the nodes in the order they are laid out, queueing the sub nodes of each node as a block
+        Node[] layout = new Node[numberOfNodes];
+        layout[0] = rootNode;
+        int nextFreeIndex = 1;
+        for (int i = 0; i < numberOfNodes; i++) {
+
+            Node node = layout[i];
+            nodeClasses[i] = node.mostCommonClass;
+            splitAttributes[i] = -1;
+
+            splitValues[i] = -1;
+
+            if (node.subNodes != null) {
+
+                splitAttributes[i] = node.attributeSplitIndex;
+                splitValues[i] = node.splitValue;
+                firstSubNodes[i] = nextFreeIndex;
+                for (Node subNode : node.subNodes) {
+                    layout[nextFreeIndex++] = subNode;
+                }
             }
         }
 
-        // Create and store the root node of the model. This will recursively construct the decision tree
-        rootNode = new Node(trainingData, attributesLeft.toString(), 0);
+        // Store the number of values of each attribute to detect values the tree has no sub node for
+        int[] attributeValueCounts = new int[dataDescriptor.getNumberOfAttributes()];
+        for (int a = 0; a < attributeValueCounts.length; a++) {
+            attributeValueCounts[a] = dataDescriptor.getUniqueAttributeValues(a).size();
+        }
 
-        System.out.println("\t| TIME TAKEN: " + (System.currentTimeMillis() - previousTime) + "ms\n");
+        return new CompiledTree(splitAttributes, splitValues, firstSubNodes, nodeClasses, attributeValueCounts);
     }
 
     /**
@@ -67,6 +327,11 @@ public class ID3 {
      */
     public String createTreeDiagramScript(boolean showEmptyLeaves) {
 
+        // Only the compiled tree of a loaded model is available
+        if (rootNode == null) {
+            throw new IllegalStateException("The tree diagram is not available for a model loaded from a file");
+        }
+
         String s = "";
         s += "digraph Tree {\nnode [shape=box, style=\"filled\", color=\"black\"];\n";
         s += rootNode.toString(showEmptyLeaves);
@@ -76,28 +341,41 @@ public class ID3 {
 
     /**
      * Tests the model with the provided data set and returns a string containing the confusion matrix and
-     * accuracy statistics based on the test data set.
+     * accuracy statistics based on the test data set. If the model was built with more than one thread, large test
+     * data sets are split between that many workers.
      *
-     * @param testDataSet List of data elements
+     * @param testDataSet The data set to test the model with
      * @return A string containing the test results
      */
-    public String testModel(ArrayList<DataElement> testDataSet) {
+    public String testModel(DataSet testDataSet) {
 
-        // Store the start time of testing
-        long previousTime = System.currentTimeMillis();
+        // Time the testing
+        Metrics metrics = Metrics.current();
+        Metrics.Timer timer = metrics.startTimer("test", null);
         System.out.print("Testing model:");
 
         int numberOfClasses = dataDescriptor.getNumberOfClasses();
-        int classIndex = dataDescriptor.getClassAttributeIndex();
 
-        // Loop through all the data elements and increment counters in the confusion matrix
-        int[][] confusionMatrix = new int[numberOfClasses][numberOfClasses];
-        for (DataElement dataElement : testDataSet) {
-            confusionMatrix[dataElement.getValue(classIndex)][rootNode.determineClass(dataElement)]++;
+        // Fill the confusion matrix, splitting the rows between a pool of workers if there is more than one thread.
+        // Every worker counts into its own matrix and the matrices are summed, so the counts are the same either way
+        int[][] confusionMatrix;
+        if (numberOfThreads > 1 && testDataSet.size() > TEST_CHUNK_SIZE) {
+
+            ForkJoinPool testPool = new ForkJoinPool(numberOfThreads, Metrics.forkJoinThreadFactory(), null, false);
+            try {
+                confusionMatrix = testPool.invoke(new ConfusionTask(testDataSet, 0, testDataSet.size()));
+            } finally {
+                testPool.shutdown();
+            }
+        } else {
+
+            confusionMatrix = new int[numberOfClasses][numberOfClasses];
+            countConfusions(testDataSet, 0, testDataSet.size(), confusionMatrix);
         }
 
         // Display the time taken to test the data set
-        System.out.println("\t| TIME TAKEN: " + (System.currentTimeMillis() - previousTime) + "ms");
+        System.out.println("\t| TIME TAKEN: " + timer.stop() + "ms");
+        metrics.addCount("test.rows", testDataSet.size());
 
         StringBuilder s = new StringBuilder();
         s.append("Number of samples: ").append(testDataSet.size()).append("\n");
@@ -156,27 +434,129 @@ public class ID3 {
     /**
      * Takes in a data set and predicts the class for each data value
      *
-     * @param dataSet List of data elements
+     * @param dataSet The data set to classify
      * @return A string containing all the predicted values
      */
-    public String predictClasses(ArrayList<DataElement> dataSet) {
+    public String predictClasses(DataSet dataSet) {
         StringBuilder s = new StringBuilder();
         s.append("Predicted Classes:\n");
 
-        long previousTime = System.currentTimeMillis();
+        Metrics metrics = Metrics.current();
+        Metrics.Timer timer = metrics.startTimer("predict", null);
         System.out.print("Predicting Classes:");
 
-        for (DataElement dataElement : dataSet) {
-            String value = dataDescriptor.indexToValue(dataDescriptor.getClassAttributeIndex(), rootNode.determineClass(dataElement));
+        for (int r = 0; r < dataSet.size(); r++) {
+            String value = dataDescriptor.indexToValue(dataDescriptor.getClassAttributeIndex(), compiledTree.determineClass(dataSet, r));
             s.append(value).append("\n");
         }
 
         // Display the time taken to predict the data set
-        System.out.println("\t| TIME TAKEN: " + (System.currentTimeMillis() - previousTime) + "ms");
+        System.out.println("\t| TIME TAKEN: " + timer.stop() + "ms");
+        metrics.addCount("predict.rows", dataSet.size());
 
         return s.toString();
     }
 
+    /**
+     * Classifies a range of rows of a test data set, incrementing the confusion matrix entry of each rows true and
+     * predicted class.
+     *
+     * @param testDataSet     The test data set
+     * @param from            Start (inclusive) of the range of rows
+     * @param to              End (exclusive) of the range of rows
+     * @param confusionMatrix The [true class][predicted class] counts to add to
+     */
+    private void countConfusions(DataSet testDataSet, int from, int to, int[][] confusionMatrix) {
+
+        int classIndex = dataDescriptor.getClassAttributeIndex();
+        for (int r = from; r < to; r++) {
+            confusionMatrix[testDataSet.getValue(r, classIndex)][compiledTree.determineClass(testDataSet, r)]++;
+        }
+    }
+
+    /**
+     * Classifies a single encoded row, which holds a value index for every attribute of the data descriptor (see
+     * {@link #getDataDescriptor()}).
+     *
+     * @param row The value indexes of the row
+     * @return The predicted class value index
+     */
+    public int classifyRow(int[] row) {
+
+        return compiledTree.determineClass(row);
+    }
+
+    /**
+     * Classifies a batch of encoded rows into the provided array. Each row holds a value index for every attribute of
+     * the data descriptor (see {@link #getDataDescriptor()}), the value in the class attribute slot is ignored. No
+     * objects are created, so the method can be called repeatedly with reused buffers.
+     *
+     * @param rows             The rows of value indexes
+     * @param rowCount         The number of rows to classify, starting from the first row
+     * @param predictedClasses The array to store the class value index of each row in
+     */
+    public void classifyRows(int[][] rows, int rowCount, int[] predictedClasses) {
+
+        checkBatchSize(rows.length, rowCount, predictedClasses);
+        for (int r = 0; r < rowCount; r++) {
+            predictedClasses[r] = compiledTree.determineClass(rows[r]);
+        }
+    }
+
+    /**
+     * Classifies a batch of encoded rows stored as columns into the provided array. There is a column of value indexes
+     * for every attribute of the data descriptor (see {@link #getDataDescriptor()}), the class column is not read and
+     * may be null. No objects are created, so the method can be called repeatedly with reused buffers.
+     *
+     * @param columns          The columns of value indexes
+     * @param rowCount         The number of rows to classify, starting from the first row
+     * @param predictedClasses The array to store the class value index of each row in
+     */
+    public void classifyColumns(int[][] columns, int rowCount, int[] predictedClasses) {
+
+        checkBatchSize(rowCount, rowCount, predictedClasses);
+        for (int r = 0; r < rowCount; r++) {
+            predictedClasses[r] = compiledTree.determineClass(columns, r);
+        }
+    }
+
+    /**
+     * Checks that a batch has enough rows and that the output array can hold a class for each of them.
+     *
+     * @param availableRows    The number of rows in the batch
+     * @param rowCount         The number of rows to classify
+     * @param predictedClasses The array to store the classes in
+     */
+    private static void checkBatchSize(int availableRows, int rowCount, int[] predictedClasses) {
+
+        if (rowCount < 0 || rowCount > availableRows) {
+            throw new IllegalArgumentException("Row count " + rowCount + " is outside the batch of " + availableRows + " rows");
+        }
+        if (predictedClasses.length < rowCount) {
+            throw new IllegalArgumentException("Output array of length " + predictedClasses.length + " can not hold " + rowCount + " classes");
+        }
+    }
+
+    /**
+     * Returns the compiled tree used to classify rows.
+     *
+     * @return The compiled tree
+     */
+    CompiledTree getCompiledTree() {
+
+        return compiledTree;
+    }
+
+    /**
+     * Returns the data descriptor of the data set the model was built with. It is used to encode rows for the batch
+     * classification methods and to convert the predicted class indexes back into class values.
+     *
+     * @return The data descriptor
+     */
+    public DataDescriptor getDataDescriptor() {
+
+        return dataDescriptor;
+    }
 
     /**
      * The java object that defines the nodes of a decision tree. When a node is created it will try to recursively add
@@ -204,8 +584,9 @@ public class ID3 {
      */
     private class Node {
 
-        private final int nodeIndex;
+        private int nodeIndex;
         private int attributeSplitIndex = -1;
+        private int splitValue = -1;
         private double informationGain = 0;
         private int mostCommonClass;
 
@@ -219,51 +600,100 @@ public class ID3 {
          * Constructor for creating a node in a decision tree. Functions recursively and will create sub nodes until all
          * data is split or there are no more attributes to split on.
          *
-         * @param samples        List of data elements
-         * @param attributesLeft String defining which attributes can be used to split the data
+         * @param from           Start (inclusive) of this nodes range of sample rows
+         * @param to             End (exclusive) of this nodes range of sample rows
+         * @param classCounts    The class counts of the sample rows if the parent node already has them, else null
+         * @param usedAttributes Bit set marking the candidate splits that can no longer be used to split the data
          */
-        public Node(ArrayList<DataElement> samples, String attributesLeft, int nodeDepth) {
+        public Node(int from, int to, int[] classCounts, BitSet usedAttributes, int nodeDepth) {
 
-            // Self assign a node index and increment the value
-            nodeIndex = currentNodeIndex++;
+            // Time the work of this node, excluding its sub nodes, if the flight recorder is recording node builds
+            NodeBuildEvent buildEvent = null;
+            if (recordNodeBuilds) {
+
+                buildEvent = new NodeBuildEvent();
+                buildEvent.begin();
+            }
+
+            if (summariseSamples(from, to, classCounts, nodeDepth)) {
+                constructSubNodes(from, to, usedAttributes, nodeDepth, buildEvent);
+            } else {
+                commitBuildEvent(buildEvent, nodeDepth, 0, 0);
+            }
+        }
+
+        /**
+         * Counts the classes of the samples in the given range and determines whether the node should be split.
+         *
+         * @param from        Start (inclusive) of this nodes range of sample rows
+         * @param to          End (exclusive) of this nodes range of sample rows
+         * @param classCounts The class counts of the sample rows if the parent node already has them, else null
+         * @param nodeDepth   The depth of this node in the tree
+         * @return If the samples should be split into sub nodes
+         */
+        private boolean summariseSamples(int from, int to, int[] classCounts, int nodeDepth) {
 
             // Get sample count and stop if there are no samples
-            sampleCount = samples.size();
-            if (sampleCount == 0) return;
+            sampleCount = to - from;
+            if (sampleCount == 0) return false;
 
-            // Count the number of data elements for each class value
-            classCounts = extractClassCounts(samples);
+            // Count the number of data elements for each class value, unless the parent counted them when it was split
+            this.classCounts = classCounts != null ? classCounts : extractClassCounts(from, to);
 
             // Determine the class with the most number of samples
             mostCommonClass = determineMostCommonClass();
 
             // Determine the current sample entropy for this node
-            currentEntropy = calculateEntropy(samples);
+            currentEntropy = entropyTable.entropy(this.classCounts, 0, this.classCounts.length, sampleCount);
 
             // Check if this node is a single class and stop recursion
-            if (isSingleClass()) return;
+            if (isSingleClass()) return false;
 
             // Stop if the max node depth is reached
-            if(nodeDepth >= maxNodeDepth && maxNodeDepth != -1) return;
+            return nodeDepth < maxNodeDepth || maxNodeDepth == -1;
+        }
+
+        /**
+         * Ends the flight recorder event of this node and commits it if events are being recorded.
+         *
+         * @param buildEvent          The event started when the node was created, or null if node builds are not
+         *                            being recorded
+         * @param nodeDepth           The depth of this node in the tree
+         * @param candidateAttributes The number of attributes whose information gain was calculated
+         * @param branches            The number of sub nodes
+         */
+        private void commitBuildEvent(NodeBuildEvent buildEvent, int nodeDepth, int candidateAttributes, int branches) {
+
+            if (buildEvent == null) return;
 
-            constructSubNodes(samples, attributesLeft, nodeDepth);
+            buildEvent.end();
+            if (!buildEvent.shouldCommit()) return;
+
+            buildEvent.depth = nodeDepth;
+            buildEvent.samples = sampleCount;
+            buildEvent.candidateAttributes = candidateAttributes;
+            buildEvent.splitAttribute = attributeSplitIndex == -1 ? null : getSplitName();
+            buildEvent.informationGain = informationGain;
+            buildEvent.branches = branches;
+            buildEvent.commit();
         }
 
         /**
-         * Extracts the current number of each class that is present in the given sample.
+         * Extracts the current number of each class that is present in the given range of sample rows.
          *
-         * @param samples A list of data elements
+         * @param from Start (inclusive) of the range of sample rows
+         * @param to   End (exclusive) of the range of sample rows
          * @return A array of integers containing class value counts
          */
-        private int[] extractClassCounts(ArrayList<DataElement> samples) {
+        private int[] extractClassCounts(int from, int to) {
 
-            int classAttributeIndex = dataDescriptor.getClassAttributeIndex();
+            DataColumn classColumn = trainingData.getColumn(dataDescriptor.getClassAttributeIndex());
 
-            // Count the number of data elements for each class value
+            // Count the number of rows for each class value
             int[] counts = new int[dataDescriptor.getNumberOfClasses()];
-            for (DataElement dataElement : samples) {
+            for (int i = from; i < to; i++) {
 
-                counts[dataElement.getValue(classAttributeIndex)]++;
+                counts[classColumn.get(sampleRows[i])]++;
             }
 
             return counts;
@@ -317,55 +747,112 @@ public class ID3 {
         }
 
         /**
-         * Creates the sub nodes for this node in the tree. Takes in the current list of samples and the attributes that
-         * can be used to split the data and determines which attribute has the highest information gain.
+         * Creates the sub nodes for this node in the tree. Takes in the current list of samples and the candidate splits
+         * that can be used to split the data and determines which split has the highest information gain.
          *
-         * @param samples        List of data elements to be split
-         * @param attributesLeft A string describing the attributes that can be used to split the data
+         * @param from           Start (inclusive) of the range of sample rows to be split
+         * @param to             End (exclusive) of the range of sample rows to be split
+         * @param usedAttributes Bit set marking the candidate splits that can no longer be used to split the data
+         * @param buildEvent     The flight recorder event of this node, committed before the sub nodes are built, or
+         *                       null
          */
-        private void constructSubNodes(ArrayList<DataElement> samples, String attributesLeft, int currentNodeDepth) {
+        private void constructSubNodes(int from, int to, BitSet usedAttributes, int currentNodeDepth, NodeBuildEvent buildEvent) {
+
+            int numberOfCandidates = candidateAttributes.length;
 
-            int largestInfoGainAttributeIndex = 0;
+            int largestInfoGainCandidate = 0;
             double currentLargestInfoGain = Double.MIN_VALUE;
 
             // If there are no more attributes to split on, stop
-            if (!attributesLeft.contains("0")) return;
+            if (usedAttributes.nextClearBit(0) >= numberOfCandidates) {
 
-            for (int i = 0; i < dataDescriptor.getNumberOfAttributes(); i++) {
+                commitBuildEvent(buildEvent, currentNodeDepth, 0, 0);
+                return;
+            }
 
-                // Don't attempt to check information gain on a previously used attribute
-                if (attributesLeft.charAt(i) == '1') continue;
+            // Count the class values of every attribute with an unused split in a single pass over the samples
+            BitSet uncountedAttributes = findUncountedAttributes(usedAttributes);
+            int[][] subsetClassCounts = null;
+            SplitEvaluator splitEvaluator = acquireSplitEvaluator();
+            try {
+                splitEvaluator.countSamples(sampleRows, from, to, uncountedAttributes);
+
+                // Only check the information gain of the splits that have not been used
+                for (int i = usedAttributes.nextClearBit(0); i < numberOfCandidates; i = usedAttributes.nextClearBit(i + 1)) {
+
+                    // Calculate information gain for this candidate split
+                    double infoGain = candidateValues[i] == -1
+                            ? splitEvaluator.calculateInformationGain(candidateAttributes[i], currentEntropy, sampleCount)
+                            : splitEvaluator.calculateOneVsRestGain(candidateAttributes[i], candidateValues[i], classCounts, currentEntropy, sampleCount);
+
+                    // Check if the new information gain is larger than before
+                    if (infoGain > currentLargestInfoGain) {
+                        currentLargestInfoGain = infoGain;
+                        largestInfoGainCandidate = i;
+                    }
+                }
 
-                // Calculate information gain for this attribute index
-                double infoGain = calculateInformationGain(samples, i);
+                // Use the split which gives the largest information gain to split the data
+                attributeSplitIndex = candidateAttributes[largestInfoGainCandidate];
+                splitValue = candidateValues[largestInfoGainCandidate];
 
-                // Check if the new information gain is larger than before
-                if (infoGain > currentLargestInfoGain) {
-                    currentLargestInfoGain = infoGain;
-                    largestInfoGainAttributeIndex = i;
+                // The counts of the chosen attribute are the class counts of the sub nodes. If no split had any
+                // information gain the first candidate is split on, which may not have been counted
+                if (!uncountedAttributes.get(attributeSplitIndex)) {
+                    subsetClassCounts = splitValue == -1
+                            ? splitEvaluator.getValueClassCounts(attributeSplitIndex)
+                            : splitEvaluator.getOneVsRestClassCounts(attributeSplitIndex, splitValue, classCounts);
                 }
+            } finally {
+                releaseSplitEvaluator(splitEvaluator);
             }
 
-            // Store the information gain for this attribute split
+            // Store the information gain for this split
             informationGain = currentLargestInfoGain;
 
-            // Use the attribute which gives the largest information gain to split the data
-            attributeSplitIndex = largestInfoGainAttributeIndex;
+            // Mark the split as used
+            BitSet subNodeUsedAttributes = (BitSet) usedAttributes.clone();
+            subNodeUsedAttributes.set(largestInfoGainCandidate);
+
+            // Break up the samples based on that split
+            int[] subsetBounds = partitionSamples(from, to, attributeSplitIndex, splitValue, subsetClassCounts);
+
+            int numberOfSubsets = subsetBounds.length - 1;
+            if (subsetClassCounts == null) subsetClassCounts = new int[numberOfSubsets][];
+            commitBuildEvent(buildEvent, currentNodeDepth, numberOfCandidates - usedAttributes.cardinality(), numberOfSubsets);
+
+            // Fork the large subsets as separate tasks when building in parallel. The subsets are separate ranges of
+            // the sample rows, so the sub trees can be built at the same time
+            SubTreeTask[] subTreeTasks = new SubTreeTask[numberOfSubsets];
+            if (ForkJoinTask.getPool() == pool && pool != null) {
+                for (int v = 0; v < numberOfSubsets; v++) {
+
+                    if (subsetBounds[v + 1] - subsetBounds[v] < Math.max(parallelCutoff, 1)) continue;
+
+                    subTreeTasks[v] = new SubTreeTask(subsetBounds[v], subsetBounds[v + 1], subsetClassCounts[v], subNodeUsedAttributes, currentNodeDepth + 1);
+                    subTreeTasks[v].fork();
+                }
+            }
 
-            // Mark the split attribute as used
-            StringBuilder newAttributesLeft = new StringBuilder(attributesLeft);
-            newAttributesLeft.setCharAt(attributeSplitIndex, '1');
+            // For each remaining subset of the samples create a new node on this thread
+            Node[] nodes = new Node[numberOfSubsets];
+            for (int v = 0; v < numberOfSubsets; v++) {
+
+                if (subTreeTasks[v] != null) continue;
+                nodes[v] = new Node(subsetBounds[v], subsetBounds[v + 1], subsetClassCounts[v], subNodeUsedAttributes, currentNodeDepth + 1);
+            }
 
-            // Break up the samples based on that attribute
-            ArrayList<ArrayList<DataElement>> valueSubsets = getSubSets(samples, attributeSplitIndex);
+            // Wait for the forked sub trees, newest first
+            for (int v = numberOfSubsets - 1; v >= 0; v--) {
+
+                if (subTreeTasks[v] != null) nodes[v] = subTreeTasks[v].join();
+            }
 
-            // For each subset of the samples create a new node
             subNodes = new ArrayList<>();
-            for (ArrayList<DataElement> valueSubset : valueSubsets) {
-                Node node = new Node(valueSubset, newAttributesLeft.toString(), currentNodeDepth + 1);
+            for (Node node : nodes) {
 
                 // If there are no samples in the subset use the parents most common class value
-                if (valueSubset.size() == 0) {
+                if (node.getSampleCount() == 0) {
                     node.setMostCommonClass(mostCommonClass);
                 }
 
@@ -374,99 +861,99 @@ public class ID3 {
         }
 
         /**
-         * This function calculates the information gain for splitting the samples using a specific attribute.
+         * Partitions a range of the sample rows in place so that the rows are grouped by their value of the provided
+         * attribute. Works like the partition step of quicksort, but with a bucket for every attribute value. A binary
+         * split has two buckets, the rows without the split value followed by the rows with it.
          *
-         * @param samples        List of data elements
-         * @param attributeIndex Attribute to split and calculate information gain
-         * @return The information gain of this split
+         * @param from             Start (inclusive) of the range of sample rows
+         * @param to               End (exclusive) of the range of sample rows
+         * @param attributeIndex   Attribute to split the data set on
+         * @param splitValue       The value of a binary split, or -1 to split on every value
+         * @param valueClassCounts The class counts of each value subset if they are known, else null
+         * @return The bounds of each value subset, subset v is the range [bounds[v], bounds[v + 1])
          */
-        private double calculateInformationGain(ArrayList<DataElement> samples, int attributeIndex) {
+        private int[] partitionSamples(int from, int to, int attributeIndex, int splitValue, int[][] valueClassCounts) {
 
-            // Create subsets of the values based of the attribute to split on
-            ArrayList<ArrayList<DataElement>> valueSubsets = getSubSets(samples, attributeIndex);
+            DataColumn column = trainingData.getColumn(attributeIndex);
+            int numberOfValues = splitValue == -1 ? dataDescriptor.getUniqueAttributeValues(attributeIndex).size() : 2;
 
-            // Sum up the weighted entropy for all the sub sets
-            double subSetEntropySum = 0;
-            for (ArrayList<DataElement> valueSubset : valueSubsets) {
+            // Take the number of samples for each attribute value from the class counts, or count them, to determine
+            // the subset bounds
+            int[] bounds = new int[numberOfValues + 1];
+            if (valueClassCounts != null) {
+                for (int v = 0; v < numberOfValues; v++) {
+                    for (int count : valueClassCounts[v]) bounds[v + 1] += count;
+                }
+            } else {
+                for (int i = from; i < to; i++) {
+                    bounds[subsetIndex(column.get(sampleRows[i]), splitValue) + 1]++;
+                }
+            }
+            bounds[0] = from;
+            for (int v = 0; v < numberOfValues; v++) {
+                bounds[v + 1] += bounds[v];
+            }
 
-                // If the sub set does not have any samples skip it
-                if (valueSubset.size() == 0) continue;
+            // Swap every sample row into its value subset, tracking the next free position of each subset
+            int[] next = Arrays.copyOf(bounds, numberOfValues);
+            for (int v = 0; v < numberOfValues; v++) {
+                while (next[v] < bounds[v + 1]) {
 
-                // Add the weighted entropy of the subset to the overall split entropy
-                subSetEntropySum += ((double) valueSubset.size() / (double) sampleCount) * calculateEntropy(valueSubset);
+                    int row = sampleRows[next[v]];
+                    int value = subsetIndex(column.get(row), splitValue);
+
+                    // Leave the row if it is already in the correct subset, else swap it into its own subset
+                    if (value == v) {
+                        next[v]++;
+                    } else {
+                        sampleRows[next[v]] = sampleRows[next[value]];
+                        sampleRows[next[value]++] = row;
+                    }
+                }
             }
 
-            return currentEntropy - subSetEntropySum;
+            return bounds;
         }
 
         /**
-         * Calculates the current entropy of the provided data set based on the class attribute.
+         * Returns the subset a value of the split attribute belongs to.
          *
-         * @param samples List of data elements
-         * @return The entropy of the data set
+         * @param value      The value index
+         * @param splitValue The value of a binary split, or -1 to split on every value
+         * @return The value itself, or for a binary split 1 if it is the split value and 0 if it is not
          */
-        private double calculateEntropy(ArrayList<DataElement> samples) {
-
-            // Determine the number of samples in this data set
-            int sampleSize = samples.size();
-
-            // Create an array to store the class counts for this data set
-            int[] classValueCounts = extractClassCounts(samples);
-
-            // Sum up the entropy for this sample
-            double ent = 0;
-            for (int classValueCount : classValueCounts) {
+        private int subsetIndex(int value, int splitValue) {
 
-                // Calculate the probability of this class
-                double p_ = (double) classValueCount / (double) sampleSize;
-
-                // If the probability is zero skip this value to prevent math errors
-                if (p_ == 0) continue;
-
-                // Calculate the entropy to be added (log base conversion is used to get log base 2)
-                ent += -p_ * (Math.log(p_)/Math.log(2));
-            }
+            if (splitValue == -1) return value;
 
-            return ent;
+            return value == splitValue ? 1 : 0;
         }
 
         /**
-         * Returns a list of split data sets based on the provided attribute.
+         * Returns the name of the split of this node, which for a binary split is the name of the binarised attribute
+         * it matches.
          *
-         * @param samples        List of data samples to split
-         * @param attributeIndex Attribute to split the data set on
-         * @return A split list of data samples
+         * @return The name of the split
          */
-        private ArrayList<ArrayList<DataElement>> getSubSets(ArrayList<DataElement> samples, int attributeIndex) {
+        private String getSplitName() {
 
-            // Create a list to hold all the sub lists
-            ArrayList<ArrayList<DataElement>> valueSubsets = new ArrayList<>();
-            for (int i = 0; i < dataDescriptor.getUniqueAttributeValues(attributeIndex).size(); i++) {
-                valueSubsets.add(new ArrayList<>());
-            }
-
-            // Populate the sub lists with the data elements
-            for (DataElement dataElement : samples) {
-                valueSubsets.get(dataElement.getValue(attributeIndex)).add(dataElement);
-            }
+            String attribute = dataDescriptor.getAttribute(attributeSplitIndex);
+            if (splitValue == -1) return attribute;
 
-            return valueSubsets;
+            return attribute + " = " + dataDescriptor.getUniqueAttributeValues(attributeSplitIndex).get(splitValue);
         }
 
         /**
-         * Determines the class value for the provided data element based on the tree structure. Functions recursively
-         * and will go through the tree until there are no more sub nodes.
+         * Returns the label of the connection to a sub node.
          *
-         * @param dataElement The data element to be classified
-         * @return The class classification for this data element
+         * @param subset The index of the sub node
+         * @return The attribute value of the sub node, or false or true for a binary split
          */
-        private int determineClass(DataElement dataElement) {
+        private String getSubsetLabel(int subset) {
 
-            // If this is a leaf node return the most common class value
-            if (subNodes == null) return mostCommonClass;
+            if (splitValue == -1) return dataDescriptor.getUniqueAttributeValues(attributeSplitIndex).get(subset);
 
-            // Use the sub nodes to determine the most common class value
-            return subNodes.get(dataElement.getValue(attributeSplitIndex)).determineClass(dataElement);
+            return subset == 1 ? "true" : "false";
         }
 
         /**
@@ -478,6 +965,20 @@ public class ID3 {
             this.mostCommonClass = mostCommonClass;
         }
 
+        /**
+         * Numbers this node and all its sub nodes in depth first order, the order in which a single thread creates
+         * them.
+         */
+        private void assignNodeIndexes() {
+
+            nodeIndex = currentNodeIndex++;
+            if (subNodes == null) return;
+
+            for (Node subNode : subNodes) {
+                subNode.assignNodeIndexes();
+            }
+        }
+
         /**
          * Gets the node index used for defining the tree structure.
          *
@@ -513,7 +1014,7 @@ public class ID3 {
             // If this node is a leaf node don't display split and information gain
             if (attributeSplitIndex != -1) {
 
-                s.append("Split on: ").append(dataDescriptor.getAttribute(attributeSplitIndex)).append("\\n");
+                s.append("Split on: ").append(getSplitName()).append("\\n");
                 s.append("Information gain = ").append(String.format(decFormat, informationGain)).append("\\n");
             }
             s.append("Current Entropy = ").append(String.format(decFormat, currentEntropy)).append("\\n");
@@ -544,7 +1045,7 @@ public class ID3 {
 
                     // Add the node linking description
                     s.append(getNodeIndex()).append(" -> ").append(subNodes.get(i).getNodeIndex());
-                    s.append("[label=\"").append(dataDescriptor.getUniqueAttributeValues(attributeSplitIndex).get(i)).append("\"]").append(";");
+                    s.append("[label=\"").append(getSubsetLabel(i)).append("\"]").append(";");
                     s.append("\n");
 
                     // Add the sub nodes text
@@ -555,4 +1056,81 @@ public class ID3 {
             return s.toString();
         }
     }
+
+    /**
+     * Fork/join task that fills a confusion matrix for a range of test rows, splitting the range in half until it is
+     * small enough to classify directly. The matrices of the two halves are summed when they are joined.
+     */
+    private class ConfusionTask extends RecursiveTask<int[][]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final DataSet testDataSet;
+        private final int from;
+        private final int to;
+
+        ConfusionTask(DataSet testDataSet, int from, int to) {
+
+            this.testDataSet = testDataSet;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected int[][] compute() {
+
+            // Classify directly if the range is small enough
+            if (to - from <= TEST_CHUNK_SIZE) {
+
+                int numberOfClasses = dataDescriptor.getNumberOfClasses();
+                int[][] confusionMatrix = new int[numberOfClasses][numberOfClasses];
+                countConfusions(testDataSet, from, to, confusionMatrix);
+                return confusionMatrix;
+            }
+
+            int middle = (from + to) >>> 1;
+            ConfusionTask upperHalf = new ConfusionTask(testDataSet, middle, to);
+            upperHalf.fork();
+            int[][] confusionMatrix = new ConfusionTask(testDataSet, from, middle).compute();
+
+            // Add the counts of the upper half to the lower half
+            int[][] upperCounts = upperHalf.join();
+            for (int r = 0; r < confusionMatrix.length; r++) {
+                for (int c = 0; c < confusionMatrix[r].length; c++) {
+                    confusionMatrix[r][c] += upperCounts[r][c];
+                }
+            }
+
+            return confusionMatrix;
+        }
+    }
+
+    /**
+     * Fork/join task that builds a sub tree of the model from a range of the sample rows.
+     */
+    private class SubTreeTask extends RecursiveTask<Node> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int[] classCounts;
+        private final BitSet usedAttributes;
+        private final int nodeDepth;
+
+        SubTreeTask(int from, int to, int[] classCounts, BitSet usedAttributes, int nodeDepth) {
+
+            this.from = from;
+            this.to = to;
+            this.classCounts = classCounts;
+            this.usedAttributes = usedAttributes;
+            this.nodeDepth = nodeDepth;
+        }
+
+        @Override
+        protected Node compute() {
+
+            return new Node(from, to, classCounts, usedAttributes, nodeDepth);
+        }
+    }
 }
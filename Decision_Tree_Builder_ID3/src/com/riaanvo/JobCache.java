@@ -0,0 +1,79 @@
+package com.riaanvo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps parsed data sets and models between jobs. Every entry is keyed by the absolute path, modification time and
+ * size of the file it was created from, together with whatever else it depends on. A changed file therefore gets a new
+ * key, and the stale entry is eventually dropped as the least recently used one.
+ */
+public class JobCache {
+
+    private final Map<List<Object>, Object> entries;
+
+    /**
+     * Constructor for a cache holding a limited number of entries.
+     *
+     * @param maxEntries The number of entries kept before the least recently used ones are dropped
+     */
+    public JobCache(int maxEntries) {
+
+        entries = new LinkedHashMap<List<Object>, Object>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, Object> eldest) {
+
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Creates the key for an entry created from a file.
+     *
+     * @param filePath The path of the file
+     * @param context  The other values the entry depends on
+     * @return The key of the entry
+     */
+    static List<Object> fileKey(String filePath, Object... context) {
+
+        File file = new File(filePath).getAbsoluteFile();
+
+        List<Object> key = new ArrayList<>();
+        key.add(file.getPath());
+        key.add(file.lastModified());
+        key.add(file.length());
+        Collections.addAll(key, context);
+
+        return key;
+    }
+
+    /**
+     * Returns the cached entry for a key.
+     *
+     * @param key The key of the entry
+     * @param <T> The type of the entry
+     * @return The entry, or null if it is not cached
+     */
+    @SuppressWarnings("unchecked")
+    <T> T get(List<Object> key) {
+
+        return (T) entries.get(key);
+    }
+
+    /**
+     * Adds an entry to the cache.
+     *
+     * @param key   The key of the entry
+     * @param value The entry
+     */
+    void put(List<Object> key, Object value) {
+
+        entries.put(key, value);
+    }
+}
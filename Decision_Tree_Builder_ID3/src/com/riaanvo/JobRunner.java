@@ -0,0 +1,424 @@
+package com.riaanvo;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a single ID3 Builder job from its parsed command line options. A job builds or loads a model, outputs its tree
+ * and tests and predicts with it, writing its progress to the standard output.
+ * <p>
+ * A job can be given a cache which keeps parsed data sets and models between jobs, as is done by the daemon. Cached
+ * entries are keyed by the file path and its modification time, so a file that has changed is parsed again.
+ */
+public class JobRunner {
+
+    // Size of the buffer used when streaming predictions to a file
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    private final JobCache cache;
+
+    private DataDescriptor dataDescriptor;
+    private DataSet trainDataSet;
+    private DataSet testDataSet;
+    private DataSet predictDataSet;
+    private DataPreprocessor preprocessor;
+    private boolean debugMode;
+
+    /**
+     * Constructor for a job runner.
+     *
+     * @param cache The cache of data sets and models shared between jobs, or null to not cache anything
+     */
+    public JobRunner(JobCache cache) {
+
+        this.cache = cache;
+    }
+
+    /**
+     * Runs the job described by the command line options.
+     *
+     * @param opts The options and arguments parsed from the command line
+     */
+    public void run(Map<String, Object> opts) {
+
+        // Start collecting the timings and counters of this job
+        Metrics metrics = Metrics.startJob();
+        Metrics.Timer jobTimer = metrics.startTimer("job", null);
+
+        // Extract whether a model is loaded, the node depth, thread count and the kind of splits from the arguments
+        boolean hasModelFile = opts.get("--modelFile") != null;
+        int nodeDepth = Integer.parseInt(opts.get("--treeDepth").toString());
+        int numberOfThreads = Integer.parseInt(opts.get("--threads").toString());
+        int parallelCutoff = Integer.parseInt(opts.get("--parallelCutoff").toString());
+        boolean binarise = (opts.get("--binarise").toString().equals("true"));
+        boolean binarySplits = (opts.get("--binarySplits").toString().equals("true"));
+        boolean memoryMap = (opts.get("--memoryMap").toString().equals("true"));
+        boolean showEmptyLeaves = (opts.get("--showEmptyLeaves").toString().equals("true"));
+        debugMode = (opts.get("--debug").toString().equals("true"));
+
+
+        // Check if the aditional options have been included and store the result in booleans
+        boolean hasOutputStructureFile = opts.get("--oTreeFile") != null;
+        boolean hasOutputModelFile = opts.get("--oModelFile") != null;
+        boolean hasTestData = opts.get("--testFile") != null;
+        boolean hasOutputAnalysisFile = opts.get("--oAnalysisFile") != null;
+        boolean hasPredictionData = opts.get("--predictFile") != null;
+        boolean hasOutputPredictFile = opts.get("--oPredictFile") != null;
+
+        // Predictions can only be streamed when they are written to a file
+        boolean streamPredictions = hasPredictionData && hasOutputPredictFile && opts.get("--streamPredict").toString().equals("true");
+
+        // Create a data parser to convert the csv file into data objects
+        DataParser dataParser = new DataParser(memoryMap, numberOfThreads);
+
+        // Load the model from its file, or extract the training data set to build it from. A model built by an earlier
+        // job from the same training file and options is used again
+        ID3 id3Tree = null;
+        List<Object> builtModelKey = null;
+        ModelFile modelFile = null;
+        if (hasModelFile) {
+
+            String modelFileName = opts.get("--modelFile").toString();
+            List<Object> modelFileKey = JobCache.fileKey(modelFileName, "model file", numberOfThreads);
+            modelFile = cache != null ? cache.get(modelFileKey) : null;
+            if (modelFile == null) {
+
+                modelFile = loadModel(modelFileName, numberOfThreads);
+                if (modelFile == null) return;
+                if (cache != null) cache.put(modelFileKey, modelFile);
+            } else {
+
+                System.out.println("Using cached model: " + modelFileName + "\n");
+            }
+        } else {
+
+            String trainFile = opts.get("<trainFile>").toString();
+            if (cache != null) {
+
+                builtModelKey = JobCache.fileKey(trainFile, "model", binarise, binarySplits, nodeDepth, numberOfThreads, parallelCutoff);
+                modelFile = cache.get(builtModelKey);
+            }
+
+            if (modelFile != null) {
+
+                System.out.println("Using cached model built from: " + trainFile + "\n");
+            } else {
+
+                trainDataSet = parseData(dataParser, trainFile, null);
+                dataDescriptor = trainDataSet.getDataDescriptor();
+
+                if(debugMode){
+                    displayDataSet(trainDataSet, dataDescriptor);
+                }
+            }
+        }
+
+        // Use the data descriptor and binarisation the model was built with
+        if (modelFile != null) {
+
+            dataDescriptor = modelFile.getDataDescriptor();
+            preprocessor = modelFile.getPreprocessor();
+            binarise = preprocessor != null;
+            id3Tree = modelFile.getModel();
+        }
+
+        // If there is a test data set extract the contents
+        if (hasTestData) {
+
+            testDataSet = parseData(dataParser, opts.get("--testFile").toString(), dataDescriptor);
+        }
+
+        // If there is a data set to predict classes for extract the contents, unless it will be streamed
+        if (hasPredictionData && !streamPredictions) {
+
+            predictDataSet = parseData(dataParser, opts.get("--predictFile").toString(), dataDescriptor);
+        }
+
+        // If the binarise option was included or the model uses binarised data, convert all categorical data into
+        // binarised attributes
+        if (binarise) {
+
+            binariseDataSets(hasTestData, hasPredictionData && !streamPredictions);
+        }
+
+        // Build the ID3 decision tree model unless it was loaded
+        if (!hasModelFile) {
+
+            if (id3Tree == null) {
+
+                id3Tree = new ID3(trainDataSet, nodeDepth, numberOfThreads, parallelCutoff, binarySplits);
+                if (cache != null) cache.put(builtModelKey, new ModelFile(dataDescriptor, preprocessor, id3Tree));
+            }
+
+            // Create a text layout of the model
+            String diagramScript = id3Tree.createTreeDiagramScript(showEmptyLeaves);
+
+            // If there is an output file, write out the text model, else print it to the CLI
+            if (hasOutputStructureFile) {
+
+                writeToFile(opts.get("--oTreeFile").toString(), diagramScript);
+            } else {
+
+                System.out.println(diagramScript);
+            }
+
+            // If there is a model output file, save the model so that it can be loaded without training
+            if (hasOutputModelFile) {
+
+                writeModel(opts.get("--oModelFile").toString(), id3Tree, binarise);
+            }
+        }
+
+        // If there is a test data set, test the performance of the model
+        if (hasTestData) {
+
+            String testInformation = id3Tree.testModel(testDataSet);
+
+            // If an output file was provided write the analysis to it, else print it to the CLI
+            if (hasOutputAnalysisFile) {
+
+                writeToFile(opts.get("--oAnalysisFile").toString(), testInformation);
+            } else {
+
+                System.out.println(testInformation + "\n");
+            }
+        }
+
+        // If the predictions are streamed, classify the rows of the file one at a time as they are read
+        if (streamPredictions) {
+
+            streamPredictions(dataParser, id3Tree, opts.get("--predictFile").toString(), opts.get("--oPredictFile").toString());
+        } else if (hasPredictionData) {
+
+            // Use the model to predict the classes of the data set
+            String predictionInformation = id3Tree.predictClasses(predictDataSet);
+
+            // If there is an output file, write the predictions to that file, else display to the CLI
+            if (hasOutputPredictFile) {
+
+                writeToFile(opts.get("--oPredictFile").toString(), predictionInformation);
+            } else {
+
+                System.out.println(predictionInformation + "\n");
+            }
+        }
+
+        // If there is a metrics output file, write the timings and counters of the job to it
+        jobTimer.stop();
+        if (opts.get("--oMetricsFile") != null) {
+
+            metrics.writeJson(opts.get("--oMetricsFile").toString());
+        }
+    }
+
+    /**
+     * Parses a data set file, using the data set parsed by an earlier job if the file has not changed since.
+     *
+     * @param dataParser     The data parser used to read the file
+     * @param filePath       The file path of the data set
+     * @param dataDescriptor The data descriptor to encode the values with, or null to create one
+     * @return The parsed data set
+     */
+    private DataSet parseData(DataParser dataParser, String filePath, DataDescriptor dataDescriptor) {
+
+        // Data sets are encoded differently for every data descriptor, so the descriptor is part of the key
+        List<Object> key = null;
+        if (cache != null) {
+
+            key = JobCache.fileKey(filePath, "data set", dataDescriptor);
+            DataSet dataSet = cache.get(key);
+            if (dataSet != null) {
+
+                System.out.println("Using cached data set: " + filePath + "\n");
+                return dataSet;
+            }
+        }
+
+        dataParser.parseData(filePath, dataDescriptor);
+        DataSet dataSet = dataParser.getDataSet();
+        if (cache != null && dataSet != null) cache.put(key, dataSet);
+
+        return dataSet;
+    }
+
+    /**
+     * This method converts all the stored data sets to binarised attribute data sets. This can be used to create
+     * decision trees with only true/false decisions and not multiple route decisions
+     *
+     * @param hasTestData       Does the test set exist
+     * @param hasPredictionData Does the prediction set exist
+     */
+    private void binariseDataSets(boolean hasTestData, boolean hasPredictionData) {
+
+        // Convert the training data set to the new binarised data set, unless the model was loaded with its own
+        // data preprocessor
+        if (preprocessor == null) {
+
+            // Create a data preprocessor to convert to binarised data
+            preprocessor = new DataPreprocessor();
+
+            preprocessor.binariseDataSet(trainDataSet, dataDescriptor);
+            trainDataSet = preprocessor.getDataSet();
+
+            if(debugMode) {
+                displayDataSet(trainDataSet, preprocessor.getDataDescriptor());
+            }
+        }
+
+        // If a test set was provided, binarise the values and store the new data set
+        if (hasTestData) {
+
+            preprocessor.binariseDataSet(testDataSet, dataDescriptor);
+            testDataSet = preprocessor.getDataSet();
+        }
+
+        // If a prediction set was provided, binarise the values and store the new data set
+        if (hasPredictionData) {
+
+            preprocessor.binariseDataSet(predictDataSet, dataDescriptor);
+            predictDataSet = preprocessor.getDataSet();
+        }
+    }
+
+    /**
+     * Predicts the class of every row of a file and writes them to the output file as each row is read. Only a single
+     * row is held in memory at a time, so the file can be larger than the available memory. If the model was built with
+     * binarised data a binarising stage converts each row between the parser and the model.
+     *
+     * @param dataParser  The data parser used to read the rows
+     * @param id3Tree     The model used to classify the rows
+     * @param predictFile The file of rows to classify
+     * @param outputFile  Name of the output file
+     */
+    private void streamPredictions(DataParser dataParser, ID3 id3Tree, String predictFile, String outputFile) {
+
+        System.out.println("Streaming predictions to file: " + outputFile);
+
+        // Class values are looked up in the models data descriptor, which keeps the classes of the original data set
+        DataDescriptor modelDescriptor = id3Tree.getDataDescriptor();
+        int modelClassIndex = modelDescriptor.getClassAttributeIndex();
+
+        try (FileWriter fileWriter = new FileWriter(outputFile); BufferedWriter bw = new BufferedWriter(fileWriter, WRITE_BUFFER_SIZE)) {
+
+            bw.write("Predicted Classes:\n");
+            RowHandler classifier = row -> {
+
+                bw.write(modelDescriptor.indexToValue(modelClassIndex, id3Tree.classifyRow(row)));
+                bw.write('\n');
+            };
+
+            // Convert each row to the binarised attributes before it is classified if the model uses them
+            if (preprocessor != null) classifier = preprocessor.binarisingStage(classifier);
+
+            dataParser.streamData(predictFile, dataDescriptor, classifier);
+        } catch (IOException e) {
+            System.out.println("\nWriting Failed");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Loads a model from a binary model file.
+     *
+     * @param fileName        Name of the model file
+     * @param numberOfThreads The number of threads used to test the model
+     * @return The loaded model file, or null if it could not be loaded
+     */
+    private static ModelFile loadModel(String fileName, int numberOfThreads) {
+
+        Metrics metrics = Metrics.current();
+        Metrics.Timer timer = metrics.startTimer("loadModel", fileName);
+        System.out.print("Loading model: " + fileName);
+        try {
+            ModelFile modelFile = ModelFile.load(fileName, numberOfThreads);
+            System.out.println("\t| TIME TAKEN: " + timer.stop() + "ms\n");
+            metrics.addCount("loadModel.bytes", new File(fileName).length());
+            return modelFile;
+        } catch (IOException e) {
+            System.out.println("\nLoading Failed");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Writes a model to a binary model file together with the data descriptor of the training data.
+     *
+     * @param fileName  Name of the model file
+     * @param id3Tree   The model to write
+     * @param binarised If the model was built with binarised data
+     */
+    private void writeModel(String fileName, ID3 id3Tree, boolean binarised) {
+        System.out.print("Writing model to file: " + fileName);
+        try {
+            ModelFile.write(fileName, id3Tree, dataDescriptor, binarised);
+            System.out.println(" | COMPLETE");
+        } catch (IOException e) {
+            System.out.println("\nWriting Failed");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the passed in string to the desired file name.
+     *
+     * @param fileName     Name of the output file
+     * @param fileContents Contents to be placed in the file
+     */
+    private static void writeToFile(String fileName, String fileContents) {
+        System.out.print("Writing to file: " + fileName);
+        try (FileWriter fileWriter = new FileWriter(fileName); BufferedWriter bw = new BufferedWriter(fileWriter)) {
+            bw.write(fileContents);
+            System.out.println(" | COMPLETE");
+        } catch (Exception e) {
+            System.out.println("\nWriting Failed");
+            e.printStackTrace();
+        }
+    }
+
+
+    /**
+     * Displays the first desired number of rows from the data set and the data descriptor.
+     *
+     * @param dataSet Data set to be displayed
+     * @param dataDescriptor Data descriptor to be displayed
+     */
+    private static void displayDataSet(DataSet dataSet, DataDescriptor dataDescriptor) {
+
+        // Set the number of elements to show to 10 or less depending on the data set
+        int numberOfElementsToShow = 10;
+        if(numberOfElementsToShow > dataSet.size()) {
+
+            numberOfElementsToShow = dataSet.size();
+        }
+
+        StringBuilder s = new StringBuilder();
+
+        //Check if the data descriptor is null and add the output if it is not
+        if (dataDescriptor != null) {
+
+            s.append(dataDescriptor.toString());
+        }
+
+        // Print out the desired number of rows of data
+        s.append("\n\nData output Actual:\n");
+        for (int i = 0; i < numberOfElementsToShow; i++) {
+
+            s.append(dataSet.rowToStringInts(i)).append("\n");
+        }
+
+        // Print out the desired number of rows of data
+        s.append("\n\nData output String conversion:\n");
+        for (int i = 0; i < numberOfElementsToShow; i++) {
+
+            s.append(dataSet.rowToString(i)).append("\n");
+        }
+
+        System.out.println(s.toString());
+    }
+
+}
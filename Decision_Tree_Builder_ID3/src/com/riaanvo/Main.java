@@ -2,25 +2,34 @@ package com.riaanvo;
 
 import org.docopt.Docopt;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.Map;
 
 
 /**
  * This program takes in a file containing a categorical data set and can create an ID3 model. Different arguments will
  * change the behaviour of the program to include model testing and data classification based on the model.
+ * <p>
+ * In daemon mode the program stays running and accepts jobs with the same arguments from {@link DaemonClient}, so
+ * the jobs do not pay for starting and warming up a new JVM. In serve mode a loaded model predicts the classes of rows
+ * posted to a local HTTP endpoint.
  */
 public class Main {
 
     private static final String doc = "ID3 Builder\n\n"
             + "Usage:\n"
-            + "  ID3_Builder <trainFile> [--oTreeFile=OTREEFILE --binarise --treeDepth=TREEDEPTH --showEmptyLeaves --debug]\n"
+            + "  ID3_Builder <trainFile> [--oTreeFile=OTREEFILE --oModelFile=OMODELFILE --oMetricsFile=OMETRICSFILE --binarise --binarySplits --treeDepth=TREEDEPTH --threads=THREADS --parallelCutoff=CUTOFF --memoryMap --showEmptyLeaves --debug]\n"
 
-            + "  ID3_Builder <trainFile> [--oTreeFile=OTREEFILE] [--testFile=TESTFILE] [--oAnalysisFile=OANALYSISFILE] "
-            + "[--predictFile=PREDICTFILE] [--oPredictFile=OPREDICTFILE] "
-            + "[--binarise] [--treeDepth=TREEDEPTH] [--showEmptyLeaves] [--debug]\n"
+            + "  ID3_Builder <trainFile> [--oTreeFile=OTREEFILE] [--oModelFile=OMODELFILE] [--testFile=TESTFILE] [--oAnalysisFile=OANALYSISFILE] "
+            + "[--predictFile=PREDICTFILE] [--oPredictFile=OPREDICTFILE] [--streamPredict] [--oMetricsFile=OMETRICSFILE] "
+            + "[--binarise] [--binarySplits] [--treeDepth=TREEDEPTH] [--threads=THREADS] [--parallelCutoff=CUTOFF] [--memoryMap] [--showEmptyLeaves] [--debug]\n"
+
+            + "  ID3_Builder --modelFile=MODELFILE [--testFile=TESTFILE] [--oAnalysisFile=OANALYSISFILE] "
+            + "[--predictFile=PREDICTFILE] [--oPredictFile=OPREDICTFILE] [--streamPredict] [--oMetricsFile=OMETRICSFILE] "
+            + "[--threads=THREADS] [--memoryMap] [--debug]\n"
+
+            + "  ID3_Builder --daemon [--port=PORT] [--cacheSize=SIZE]\n"
+            + "  ID3_Builder --serve --modelFile=MODELFILE [--port=PORT] [--batchSize=SIZE] [--batchLinger=MICROS]\n"
 
             + "  ID3_Builder (-h | --help)\n"
             + "  ID3_Builder --version\n"
@@ -31,21 +40,31 @@ public class Main {
             + "  --version                       Show version.\n"
             + "  --testFile=TESTFILE             Test data set file. \n"
             + "  --predictFile=PREDICTFILE       Data set file to be predicted. \n"
+            + "  --modelFile=MODELFILE           Binary model file to load instead of building a model. \n"
             + "  --oTreeFile=OTREEFILE           Filename for the tree output. \n"
+            + "  --oModelFile=OMODELFILE         Filename for the binary model output. \n"
             + "  --oAnalysisFile=OANALYSISFILE   Filename for the analysis output. \n"
             + "  --oPredictFile=OPREDICTFILE     Filename for the prediction output. \n"
+            + "  --streamPredict                 Streams the predictions straight into the prediction output file. \n"
+            + "  --oMetricsFile=OMETRICSFILE     Filename for the JSON timings and counters of the job. \n"
             + "  --binarise                      Converts all categorical data to binary attributes. \n"
+            + "  --binarySplits                  Splits each node on one attribute value against the rest. \n"
             + "  --treeDepth=TREEDEPTH           The number of decisions the tree is restricted to. [default: -1]\n"
+            + "  --threads=THREADS               The number of threads used to parse data and build the tree. [default: 1]\n"
+            + "  --parallelCutoff=CUTOFF         Minimum samples for a sub tree to be built in parallel. [default: 1000]\n"
+            + "  --memoryMap                     Reads the data set files by memory mapping them. \n"
             + "  --showEmptyLeaves               Includes the empty leaves in the model. \n"
             + "  --debug                         Prints out the data sets for debugging \n"
+            + "  --daemon                        Runs jobs sent to a local port, keeping data sets and models cached. Only\n"
+            + "                                  clients that can read the token file it writes to ~/.id3-builder may\n"
+            + "                                  send jobs, which read and write files as the daemon's user. \n"
+            + "  --serve                         Serves the predictions of a model over HTTP on a local port. \n"
+            + "  --port=PORT                     The local port the daemon or server listens on. [default: 7424]\n"
+            + "  --cacheSize=SIZE                The number of data sets and models the daemon keeps. [default: 32]\n"
+            + "  --batchSize=SIZE                The largest number of rows the server classifies together. [default: 256]\n"
+            + "  --batchLinger=MICROS            How long the server waits for more requests to fill a batch. [default: 100]\n"
             + "\n";
 
-    private static DataDescriptor dataDescriptor;
-    private static ArrayList<DataElement> trainDataSet;
-    private static ArrayList<DataElement> testDataSet;
-    private static ArrayList<DataElement> predictDataSet;
-    private static boolean debugMode;
-
     /**
      * This is the starting point of the ID3 Builder program. It takes in the options and arguments for building and
      * outputting the decision tree.
@@ -54,193 +73,54 @@ public class Main {
     public static void main(final String[] args) {
 
         // Extract the arguments from the commandline into the disired tokens
-        final Map<String, Object> opts = new Docopt(doc).withVersion("ID3 Builder V1.0").parse(args);
-
-        // Extract the file path, node depth and whether to binarise from the arguments
-        String trainFile = opts.get("<trainFile>").toString();
-        int nodeDepth = Integer.parseInt(opts.get("--treeDepth").toString());
-        boolean binarise = (opts.get("--binarise").toString().equals("true"));
-        boolean showEmptyLeaves = (opts.get("--showEmptyLeaves").toString().equals("true"));
-        debugMode = (opts.get("--debug").toString().equals("true"));
-
-
-        // Check if the aditional options have been included and store the result in booleans
-        boolean hasOutputStructureFile = opts.get("--oTreeFile") != null;
-        boolean hasTestData = opts.get("--testFile") != null;
-        boolean hasOutputAnalysisFile = opts.get("--oAnalysisFile") != null;
-        boolean hasPredictionData = opts.get("--predictFile") != null;
-        boolean hasOutputPredictFile = opts.get("--oPredictFile") != null;
-
-        // Create a data parser to convert the csv file into data objects
-        DataParser dataParser = new DataParser();
-
-        // Extract the training data set
-        dataParser.parseData(trainFile, null);
-        dataDescriptor = dataParser.getDataDescriptor();
-        trainDataSet = dataParser.getDataSet();
-
-        if(debugMode){
-            displayDataSet(trainDataSet, dataDescriptor);
-        }
-
-        // If there is a test data set extract the contents
-        if (hasTestData) {
-
-            dataParser.parseData(opts.get("--testFile").toString(), dataDescriptor);
-            testDataSet = dataParser.getDataSet();
-        }
-
-        // If there is a data set to predict classes for extract the contents
-        if (hasPredictionData) {
+        final Map<String, Object> opts = parseArguments(args, true);
 
-            dataParser.parseData(opts.get("--predictFile").toString(), dataDescriptor);
-            predictDataSet = dataParser.getDataSet();
-        }
-
-        // If the binarise option was included, convert all categorical data into binarised attributes
-        if (binarise) {
-
-            binariseDataSets(hasTestData, hasPredictionData);
-        }
+        // Either keep running as a daemon or prediction server, or run the single job described by the arguments
+        int port = Integer.parseInt(opts.get("--port").toString());
+        if (opts.get("--daemon").toString().equals("true")) {
 
-        // Build the ID3 decision tree model
-        ID3 id3Tree = new ID3(trainDataSet, nodeDepth);
-
-        // Create a text layout of the model
-        String diagramScript = id3Tree.createTreeDiagramScript(showEmptyLeaves);
-
-        // If there is an output file, write out the text model, else print it to the CLI
-        if (hasOutputStructureFile) {
-
-            writeToFile(opts.get("--oTreeFile").toString(), diagramScript);
-        } else {
-
-            System.out.println(diagramScript);
-        }
-
-        // If there is a test data set, test the performance of the model
-        if (hasTestData) {
-
-            String testInformation = id3Tree.testModel(testDataSet);
-
-            // If an output file was provided write the analysis to it, else print it to the CLI
-            if (hasOutputAnalysisFile) {
-
-                writeToFile(opts.get("--oAnalysisFile").toString(), testInformation);
-            } else {
-
-                System.out.println(testInformation + "\n");
+            int cacheSize = Integer.parseInt(opts.get("--cacheSize").toString());
+            try {
+                new Daemon(port, cacheSize).run();
+            } catch (IOException e) {
+                e.printStackTrace();
             }
-        }
-
-        // If there is a data set to predict classes for, use the model to predict the classes
-        if (hasPredictionData) {
-
-            String predictionInformation = id3Tree.predictClasses(predictDataSet);
-
-            // If there is an output file, write the predictions to that file, else display to the CLI
-            if (hasOutputPredictFile) {
-
-                writeToFile(opts.get("--oPredictFile").toString(), predictionInformation);
-            } else {
-
-                System.out.println(predictionInformation + "\n");
+        } else if (opts.get("--serve").toString().equals("true")) {
+
+            int batchSize = Integer.parseInt(opts.get("--batchSize").toString());
+            long batchLinger = Long.parseLong(opts.get("--batchLinger").toString());
+            try {
+                ModelFile modelFile = ModelFile.load(opts.get("--modelFile").toString(), 1);
+                new PredictionServer(modelFile, batchSize, batchLinger).start(port);
+            } catch (IOException e) {
+                e.printStackTrace();
             }
-        }
-    }
-
-    /**
-     * This method converts all the stored data sets to binarised attribute data sets. This can be used to create
-     * decision trees with only true/false decisions and not multiple route decisions
-     *
-     * @param hasTestData       Does the test set exist
-     * @param hasPredictionData Does the prediction set exist
-     */
-    private static void binariseDataSets(boolean hasTestData, boolean hasPredictionData) {
-
-        // Create a data preprocessor to convert to binarised data
-        DataPreprocessor preprocessor = new DataPreprocessor();
-
-        // Convert the training data set to the new binarised data set
-        preprocessor.binariseDataSet(trainDataSet, dataDescriptor);
-        trainDataSet = preprocessor.getDataSet();
-
-        if(debugMode) {
-            displayDataSet(trainDataSet, preprocessor.getDataDescriptor());
-        }
-
-        // If a test set was provided, binarise the values and store the new data set
-        if (hasTestData) {
-
-            preprocessor.binariseDataSet(testDataSet, dataDescriptor);
-            testDataSet = preprocessor.getDataSet();
-        }
-
-        // If a prediction set was provided, binarise the values and store the new data set
-        if (hasPredictionData) {
+        } else {
 
-            preprocessor.binariseDataSet(predictDataSet, dataDescriptor);
-            predictDataSet = preprocessor.getDataSet();
+            new JobRunner(null).run(opts);
         }
     }
 
     /**
-     * Writes the passed in string to the desired file name.
+     * Parses the command line arguments of a job.
      *
-     * @param fileName     Name of the output file
-     * @param fileContents Contents to be placed in the file
+     * @param args The options and arguments for the ID3 builder
+     * @param exit If the JVM should exit when the arguments are invalid or help is shown, instead of throwing a
+     *             DocoptExitException
+     * @return The parsed options and arguments
      */
-    private static void writeToFile(String fileName, String fileContents) {
-        System.out.print("Writing to file: " + fileName);
-        try (FileWriter fileWriter = new FileWriter(fileName); BufferedWriter bw = new BufferedWriter(fileWriter)) {
-            bw.write(fileContents);
-            System.out.println(" | COMPLETE");
-        } catch (Exception e) {
-            System.out.println("\nWriting Failed");
-            e.printStackTrace();
-        }
-    }
+    static Map<String, Object> parseArguments(String[] args, boolean exit) {
 
+        return new Docopt(doc).withVersion("ID3 Builder V1.0").withExit(exit).parse(args);
+    }
 
     /**
-     * Displays the first desired number of data elements from the data set and the data descriptor.
+     * Returns the usage section of the help text.
      *
-     * @param dataSet Data set to be displayed
-     * @param dataDescriptor Data descriptor to be displayed
+     * @return The usage patterns
      */
-    private static void displayDataSet(ArrayList<DataElement> dataSet, DataDescriptor dataDescriptor) {
-
-        // Set the number of elements to show to 10 or less depending on the data set
-        int numberOfElementsToShow = 10;
-        if(numberOfElementsToShow > dataSet.size()) {
-
-            numberOfElementsToShow = dataSet.size();
-        }
-
-        StringBuilder s = new StringBuilder();
-
-        //Check if the data descriptor is null and add the output if it is not
-        if (dataDescriptor != null) {
-
-            s.append(dataDescriptor.toString());
-        }
+    static String getUsage() {
 
-        // Print out the desired number of rows of data
-        s.append("\n\nData output Actual:\n");
-        for (int i = 0; i < numberOfElementsToShow; i++) {
-
-            s.append(dataSet.get(i).toStringInts()).append("\n");
-        }
-
-        // Print out the desired number of rows of data
-        s.append("\n\nData output String conversion:\n");
-        for (int i = 0; i < numberOfElementsToShow; i++) {
-
-            s.append(dataSet.get(i).toString()).append("\n");
-        }
-
-        System.out.println(s.toString());
+        return doc.substring(doc.indexOf("Usage:"), doc.indexOf("Options:")).trim();
     }
-
 }
-
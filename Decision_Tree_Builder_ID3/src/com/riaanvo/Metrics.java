@@ -0,0 +1,493 @@
+package com.riaanvo;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the timings and counters of a job. Each phase of a job, such as parsing a file or building the model, is
+ * timed in nanoseconds together with the bytes allocated while it ran, and counters record the rows, bytes and nodes
+ * the phases processed. The peak heap usage is measured from the start of the job.
+ * <p>
+ * The metrics of the running job are reached through {@link #current()}, and a new set is started by
+ * {@link #startJob()}. The report can be written to a JSON file and the metrics of the most recent job are available
+ * over JMX as {@value #OBJECT_NAME}.
+ * <p>
+ * Allocated bytes are counted for the thread that times a phase and for the workers of the job's thread pools, which
+ * are created by {@link #threadFactory()} and {@link #forkJoinThreadFactory()}. A worker that ends during a phase adds
+ * what it allocated before it ended, and threads that do not work for the job, such as server threads, are not counted.
+ */
+public class Metrics {
+
+    // The name the metrics are registered under in the platform MBean server
+    public static final String OBJECT_NAME = "com.riaanvo:type=Metrics";
+
+    // The thread bean that can report allocated bytes, or null if the JVM does not support it
+    private static final com.sun.management.ThreadMXBean threadBean = allocationThreadBean();
+
+    // The ids of the live pool workers, and the bytes allocated by the workers that have ended, guarded by the set
+    private static final Set<Long> workerThreads = new HashSet<>();
+    private static long endedWorkerBytes;
+
+    private static volatile Metrics current = new Metrics();
+    private static boolean registered;
+
+    private final List<Phase> phases = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the metrics of the running job.
+     *
+     * @return The current metrics
+     */
+    public static Metrics current() {
+
+        return current;
+    }
+
+    /**
+     * Starts a new set of metrics for a job, resetting the peak heap usage and registering the MBean if this has not
+     * been done yet.
+     *
+     * @return The new current metrics
+     */
+    public static synchronized Metrics startJob() {
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) pool.resetPeakUsage();
+        }
+
+        current = new Metrics();
+
+        if (!registered) {
+
+            registered = true;
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                server.registerMBean(new Bean(), new ObjectName(OBJECT_NAME));
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * Starts timing a phase of the job. The phase is recorded when its timer is stopped.
+     *
+     * @param name   The name of the phase
+     * @param detail What the phase works on, such as a file path, or null
+     * @return The running timer of the phase
+     */
+    public Timer startTimer(String name, String detail) {
+
+        return new Timer(name, detail);
+    }
+
+    /**
+     * Adds to a counter, creating it if it does not exist. Counters can be added to from any thread.
+     *
+     * @param name  The name of the counter
+     * @param delta The amount to add
+     */
+    public void addCount(String name, long delta) {
+
+        counters.computeIfAbsent(name, k -> new LongAdder()).add(delta);
+    }
+
+    /**
+     * Returns the value of a counter.
+     *
+     * @param name The name of the counter
+     * @return The value of the counter, or 0 if it does not exist
+     */
+    public long getCount(String name) {
+
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    /**
+     * Returns the highest heap usage since the job started, as the sum of the peak usage of every heap memory pool.
+     * The pools may have peaked at different times, so this is an upper bound of the real peak.
+     *
+     * @return The peak heap usage in bytes
+     */
+    public long getPeakHeapBytes() {
+
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) peak += pool.getPeakUsage().getUsed();
+        }
+
+        return peak;
+    }
+
+    /**
+     * Creates the JSON report of the phases, counters and peak heap usage.
+     *
+     * @return The report as a JSON object
+     */
+    public String toJson() {
+
+        StringBuilder s = new StringBuilder();
+        s.append("{\n  \"phases\": [");
+
+        // Every recorded phase in the order they were stopped
+        List<Phase> phaseList = getPhases();
+        for (int p = 0; p < phaseList.size(); p++) {
+
+            Phase phase = phaseList.get(p);
+            s.append(p == 0 ? "\n" : ",\n");
+            s.append("    {\"name\": ").append(quote(phase.name));
+            s.append(", \"detail\": ").append(phase.detail == null ? "null" : quote(phase.detail));
+            s.append(", \"nanos\": ").append(phase.nanos);
+            s.append(", \"allocatedBytes\": ").append(phase.allocatedBytes).append("}");
+        }
+        s.append(phaseList.isEmpty() ? "],\n" : "\n  ],\n");
+
+        // The counters sorted by name
+        s.append("  \"counters\": {");
+        Map<String, Long> counterValues = getCounters();
+        boolean first = true;
+        for (Map.Entry<String, Long> counter : counterValues.entrySet()) {
+
+            s.append(first ? "\n" : ",\n");
+            s.append("    ").append(quote(counter.getKey())).append(": ").append(counter.getValue());
+            first = false;
+        }
+        s.append(counterValues.isEmpty() ? "},\n" : "\n  },\n");
+
+        s.append("  \"peakHeapBytes\": ").append(getPeakHeapBytes()).append("\n}\n");
+
+        return s.toString();
+    }
+
+    /**
+     * Writes the JSON report to a file.
+     *
+     * @param fileName Name of the output file
+     */
+    public void writeJson(String fileName) {
+
+        System.out.println("Writing metrics to file: " + fileName);
+        try (FileWriter fileWriter = new FileWriter(fileName); BufferedWriter bw = new BufferedWriter(fileWriter)) {
+            bw.write(toJson());
+        } catch (IOException e) {
+            System.out.println("\nWriting Failed");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return A copy of the recorded phases
+     */
+    private List<Phase> getPhases() {
+
+        synchronized (phases) {
+            return new ArrayList<>(phases);
+        }
+    }
+
+    /**
+     * @return The value of every counter, sorted by name
+     */
+    private Map<String, Long> getCounters() {
+
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.sum()));
+
+        return values;
+    }
+
+    /**
+     * Sums a value of the phases by phase name, as a phase such as parsing can be run more than once in a job.
+     *
+     * @param allocated If the allocated bytes are summed instead of the wall times
+     * @return The summed values by phase name
+     */
+    private Map<String, Long> sumPhases(boolean allocated) {
+
+        Map<String, Long> values = new TreeMap<>();
+        for (Phase phase : getPhases()) {
+            values.merge(phase.name, allocated ? phase.allocatedBytes : phase.nanos, Long::sum);
+        }
+
+        return values;
+    }
+
+    /**
+     * Returns a thread factory for executors whose threads work for the job, so their allocations are counted.
+     *
+     * @return The thread factory
+     */
+    static ThreadFactory threadFactory() {
+
+        ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+        return runnable -> defaultFactory.newThread(() -> {
+
+            workerStarted();
+            try {
+                runnable.run();
+            } finally {
+                workerEnded();
+            }
+        });
+    }
+
+    /**
+     * Returns a thread factory for fork/join pools whose workers work for the job, so their allocations are counted.
+     *
+     * @return The worker thread factory
+     */
+    static ForkJoinPool.ForkJoinWorkerThreadFactory forkJoinThreadFactory() {
+
+        return WorkerThread::new;
+    }
+
+    /**
+     * Starts counting the allocations of the current thread as a pool worker.
+     */
+    private static void workerStarted() {
+
+        if (threadBean == null) return;
+
+        synchronized (workerThreads) {
+            workerThreads.add(Thread.currentThread().getId());
+        }
+    }
+
+    /**
+     * Stops counting the current thread as a pool worker, keeping the bytes it allocated.
+     */
+    private static void workerEnded() {
+
+        if (threadBean == null) return;
+
+        long threadId = Thread.currentThread().getId();
+        long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId);
+        synchronized (workerThreads) {
+
+            if (workerThreads.remove(threadId) && allocatedBytes > 0) endedWorkerBytes += allocatedBytes;
+        }
+    }
+
+    /**
+     * Returns the bytes allocated so far by the current thread and by each live pool worker. The bytes of the workers
+     * that have ended are stored under the id '-1'.
+     *
+     * @return The allocated bytes by thread id, or null if allocations can not be measured
+     */
+    private static Map<Long, Long> allocatedBytesByThread() {
+
+        if (threadBean == null) return null;
+
+        Map<Long, Long> threadBytes = new HashMap<>();
+        synchronized (workerThreads) {
+
+            long[] threadIds = new long[workerThreads.size() + 1];
+            threadIds[0] = Thread.currentThread().getId();
+            int t = 1;
+            for (long workerId : workerThreads) {
+                threadIds[t++] = workerId;
+            }
+
+            long[] allocatedBytes = threadBean.getThreadAllocatedBytes(threadIds);
+            for (t = 0; t < threadIds.length; t++) {
+                if (allocatedBytes[t] > 0) threadBytes.put(threadIds[t], allocatedBytes[t]);
+            }
+            threadBytes.put(-1L, endedWorkerBytes);
+        }
+
+        return threadBytes;
+    }
+
+    /**
+     * @return The thread bean with allocation measurement enabled, or null if it is not supported
+     */
+    private static com.sun.management.ThreadMXBean allocationThreadBean() {
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) bean;
+        if (!allocationBean.isThreadAllocatedMemorySupported()) return null;
+        if (!allocationBean.isThreadAllocatedMemoryEnabled()) allocationBean.setThreadAllocatedMemoryEnabled(true);
+
+        return allocationBean;
+    }
+
+    /**
+     * Quotes and escapes a string for JSON.
+     *
+     * @param value The string
+     * @return The JSON string
+     */
+    private static String quote(String value) {
+
+        StringBuilder s = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                s.append('\\').append(c);
+            } else if (c < 0x20) {
+                s.append(String.format("\\u%04x", (int) c));
+            } else {
+                s.append(c);
+            }
+        }
+
+        return s.append('"').toString();
+    }
+
+    /**
+     * Times a single run of a phase.
+     */
+    public class Timer {
+
+        private final String name;
+        private final String detail;
+        private final Map<Long, Long> startAllocatedBytes;
+        private final long startTime;
+
+        private Timer(String name, String detail) {
+
+            this.name = name;
+            this.detail = detail;
+            this.startAllocatedBytes = allocatedBytesByThread();
+            this.startTime = System.nanoTime();
+        }
+
+        /**
+         * Stops the timer and records the phase.
+         *
+         * @return The elapsed time in whole milliseconds, for display
+         */
+        public long stop() {
+
+            long nanos = System.nanoTime() - startTime;
+
+            // Each counted thread counts from what it had allocated when the phase started, or from zero if it is new. A
+            // worker that ended during the phase is in the ended bytes with what it had allocated before the phase too
+            long allocatedBytes = -1;
+            if (startAllocatedBytes != null) {
+
+                Map<Long, Long> stopAllocatedBytes = allocatedBytesByThread();
+                allocatedBytes = 0;
+                for (Map.Entry<Long, Long> thread : stopAllocatedBytes.entrySet()) {
+                    allocatedBytes += thread.getValue() - startAllocatedBytes.getOrDefault(thread.getKey(), 0L);
+                }
+                for (Map.Entry<Long, Long> thread : startAllocatedBytes.entrySet()) {
+                    if (!stopAllocatedBytes.containsKey(thread.getKey())) allocatedBytes -= thread.getValue();
+                }
+            }
+
+            phases.add(new Phase(name, detail, nanos, allocatedBytes));
+
+            return TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+    }
+
+    /**
+     * A fork/join worker whose allocations are counted while it runs.
+     */
+    private static class WorkerThread extends ForkJoinWorkerThread {
+
+        WorkerThread(ForkJoinPool pool) {
+
+            super(pool);
+        }
+
+        @Override
+        protected void onStart() {
+
+            super.onStart();
+            workerStarted();
+        }
+
+        @Override
+        protected void onTermination(Throwable exception) {
+
+            workerEnded();
+            super.onTermination(exception);
+        }
+    }
+
+    /**
+     * A recorded run of a phase.
+     */
+    private static class Phase {
+
+        private final String name;
+        private final String detail;
+        private final long nanos;
+        private final long allocatedBytes;
+
+        Phase(String name, String detail, long nanos, long allocatedBytes) {
+
+            this.name = name;
+            this.detail = detail;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    /**
+     * The MBean, which always reports the metrics of the most recent job.
+     */
+    private static class Bean implements MetricsMXBean {
+
+        @Override
+        public Map<String, Long> getPhaseNanos() {
+
+            return current.sumPhases(false);
+        }
+
+        @Override
+        public Map<String, Long> getPhaseAllocatedBytes() {
+
+            return current.sumPhases(true);
+        }
+
+        @Override
+        public Map<String, Long> getCounters() {
+
+            return current.getCounters();
+        }
+
+        @Override
+        public long getPeakHeapBytes() {
+
+            return current.getPeakHeapBytes();
+        }
+
+        @Override
+        public String getJson() {
+
+            return current.toJson();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.riaanvo;
+
+import java.util.Map;
+
+/**
+ * The management interface of the metrics of the most recent job, registered as {@value Metrics#OBJECT_NAME}.
+ */
+public interface MetricsMXBean {
+
+    /**
+     * @return The total wall time in nanoseconds of each phase, by phase name
+     */
+    Map<String, Long> getPhaseNanos();
+
+    /**
+     * @return The total bytes allocated during each phase, by phase name
+     */
+    Map<String, Long> getPhaseAllocatedBytes();
+
+    /**
+     * @return The value of each counter, by counter name
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * @return The highest heap usage in bytes since the job started
+     */
+    long getPeakHeapBytes();
+
+    /**
+     * @return The full report in the same JSON format as the metrics file
+     */
+    String getJson();
+}
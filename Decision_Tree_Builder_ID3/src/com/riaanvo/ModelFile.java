@@ -0,0 +1,369 @@
+package com.riaanvo;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Saves a built ID3 model to a binary file and loads it again without the training data. The file holds the data
+ * descriptor of the input data, so test and prediction files can be encoded, followed by the arrays of the compiled
+ * tree.
+ * <p>
+ * All numbers are stored as little endian ints. The tree arrays start on a four byte boundary, so a loaded model
+ * classifies straight from int buffer views of the mapped file without copying the tree onto the heap, and processes
+ * loading the same file share its pages.
+ * <p>
+ * Layout: magic, version, flags (bit 0 set if the model was built with binarised data), the number of attributes, then
+ * for each attribute its name, number of values and values (each string as a byte length and UTF-8 bytes). After
+ * padding follow the number of nodes, the number of model attributes, the value count of each model attribute and the
+ * split attribute, split value, first sub node and class of each node.
+ * <p>
+ * A model file is replaced by writing the new model to a temporary file and moving it over the old one, as prediction
+ * servers and daemons keep the file they loaded mapped. A loaded file is checked before it is used, so a damaged file
+ * fails to load rather than failing or looping when rows are classified.
+ */
+public class ModelFile {
+
+    // The bytes "ID3M" read as a little endian int
+    private static final int MAGIC = 0x4D334449;
+    private static final int VERSION = 2;
+    private static final int FLAG_BINARISED = 1;
+
+    private final DataDescriptor dataDescriptor;
+    private final DataPreprocessor preprocessor;
+    private final ID3 model;
+
+    /**
+     * Constructor for a model together with the data descriptor of its input data.
+     *
+     * @param dataDescriptor The data descriptor of the input data
+     * @param preprocessor   The preprocessor that binarises input rows, or null if the model does not use binarised data
+     * @param model          The ID3 model
+     */
+    ModelFile(DataDescriptor dataDescriptor, DataPreprocessor preprocessor, ID3 model) {
+
+        this.dataDescriptor = dataDescriptor;
+        this.preprocessor = preprocessor;
+        this.model = model;
+    }
+
+    /**
+     * Writes a model to a binary model file.
+     *
+     * @param filePath       The file path of the model file
+     * @param model          The model to write
+     * @param dataDescriptor The data descriptor of the input data, before any binarisation
+     * @param binarised      If the model was built with binarised data
+     * @throws IOException If the file can not be written
+     */
+    public static void write(String filePath, ID3 model, DataDescriptor dataDescriptor, boolean binarised) throws IOException {
+
+        // Encode the attribute names and values first to find the size of the file
+        ArrayList<byte[]> strings = new ArrayList<>();
+        int descriptorSize = 4;
+        for (int a = 0; a < dataDescriptor.getNumberOfAttributes(); a++) {
+
+            strings.add(dataDescriptor.getAttribute(a).getBytes(StandardCharsets.UTF_8));
+            for (String value : dataDescriptor.getUniqueAttributeValues(a)) {
+                strings.add(value.getBytes(StandardCharsets.UTF_8));
+            }
+            descriptorSize += 4;
+        }
+        for (byte[] string : strings) {
+            descriptorSize += 4 + string.length;
+        }
+
+        CompiledTree tree = model.getCompiledTree();
+        IntBuffer attributeValueCounts = tree.getAttributeValueCounts();
+        int numberOfNodes = tree.getNumberOfNodes();
+        int treeStart = align(12 + descriptorSize);
+        int fileSize = treeStart + 4 * (2 + attributeValueCounts.limit() + 4 * numberOfNodes);
+
+        ByteBuffer buffer = ByteBuffer.allocate(fileSize).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(binarised ? FLAG_BINARISED : 0);
+
+        // Write the data descriptor
+        buffer.putInt(dataDescriptor.getNumberOfAttributes());
+        int nextString = 0;
+        for (int a = 0; a < dataDescriptor.getNumberOfAttributes(); a++) {
+
+            putString(buffer, strings.get(nextString++));
+            buffer.putInt(dataDescriptor.getUniqueAttributeValues(a).size());
+            for (int v = 0; v < dataDescriptor.getUniqueAttributeValues(a).size(); v++) {
+                putString(buffer, strings.get(nextString++));
+            }
+        }
+
+        // Write the compiled tree arrays after the padding. The position is set through Buffer, as ByteBuffer only
+        // overrides the method from Java 9 and the model file must also work on Java 8
+        ((Buffer) buffer).position(treeStart);
+        buffer.putInt(numberOfNodes).putInt(attributeValueCounts.limit());
+        putInts(buffer, attributeValueCounts);
+        putInts(buffer, tree.getSplitAttributes());
+        putInts(buffer, tree.getSplitValues());
+        putInts(buffer, tree.getFirstSubNodes());
+        putInts(buffer, tree.getNodeClasses());
+
+        // Write a temporary file next to the model file and move it into place, so a process that has the old file
+        // mapped keeps reading the old file rather than pages being truncated under it
+        ((Buffer) buffer).flip();
+        Path target = Paths.get(filePath).toAbsolutePath();
+        Path temporary = target.resolveSibling("." + target.getFileName() + "."
+                + Integer.toHexString(ThreadLocalRandom.current().nextInt()) + ".tmp");
+        try {
+
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Loads a model file by memory mapping it. The tree arrays are used directly from the mapped file.
+     *
+     * @param filePath        The file path of the model file
+     * @param numberOfThreads The number of threads used to test the model
+     * @return The loaded model file
+     * @throws IOException If the file can not be read or is not a model file
+     */
+    public static ModelFile load(String filePath, int numberOfThreads) throws IOException {
+
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+        // Check the header
+        if (buffer.remaining() < 12 || buffer.getInt() != MAGIC) {
+            throw new IOException(filePath + " is not a model file");
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException(filePath + " has unsupported model file version " + version);
+        }
+        boolean binarised = (buffer.getInt() & FLAG_BINARISED) != 0;
+
+        try {
+
+            // Rebuild the data descriptor of the input data
+            String[] attributes = new String[getLength(buffer, filePath)];
+            ArrayList<String[]> values = new ArrayList<>();
+            for (int a = 0; a < attributes.length; a++) {
+
+                attributes[a] = getString(buffer, filePath);
+                String[] attributeValues = new String[getLength(buffer, filePath)];
+                for (int v = 0; v < attributeValues.length; v++) {
+                    attributeValues[v] = getString(buffer, filePath);
+                }
+                values.add(attributeValues);
+            }
+            DataDescriptor dataDescriptor = new DataDescriptor(attributes);
+            for (int a = 0; a < attributes.length; a++) {
+                for (String value : values.get(a)) {
+                    dataDescriptor.tryAddUniqueValue(a, value);
+                }
+            }
+
+            // The model of binarised data uses the binarised data descriptor, which is derived from the input one
+            DataDescriptor modelDescriptor = dataDescriptor;
+            DataPreprocessor preprocessor = null;
+            if (binarised) {
+
+                preprocessor = new DataPreprocessor();
+                preprocessor.defineDataDescriptor(dataDescriptor);
+                modelDescriptor = preprocessor.getDataDescriptor();
+            }
+
+            // Create views of the tree arrays without copying them
+            ((Buffer) buffer).position(align(buffer.position()));
+            int numberOfNodes = buffer.getInt();
+            if (numberOfNodes < 1) throw new IOException(filePath + " has a tree with " + numberOfNodes + " nodes");
+            int numberOfModelAttributes = buffer.getInt();
+            if (numberOfModelAttributes != modelDescriptor.getNumberOfAttributes()) {
+                throw new IOException(filePath + " has a tree for " + numberOfModelAttributes + " attributes but a data descriptor with " + modelDescriptor.getNumberOfAttributes());
+            }
+            IntBuffer attributeValueCounts = intView(buffer, numberOfModelAttributes);
+            IntBuffer splitAttributes = intView(buffer, numberOfNodes);
+            IntBuffer splitValues = intView(buffer, numberOfNodes);
+            IntBuffer firstSubNodes = intView(buffer, numberOfNodes);
+            IntBuffer nodeClasses = intView(buffer, numberOfNodes);
+            checkTree(filePath, modelDescriptor, attributeValueCounts, splitAttributes, splitValues, firstSubNodes, nodeClasses);
+
+            CompiledTree tree = new CompiledTree(splitAttributes, splitValues, firstSubNodes, nodeClasses, attributeValueCounts);
+            return new ModelFile(dataDescriptor, preprocessor, new ID3(modelDescriptor, tree, numberOfThreads));
+        } catch (BufferUnderflowException e) {
+
+            throw new IOException(filePath + " is truncated", e);
+        }
+    }
+
+    /**
+     * Checks that the tree arrays of a loaded model file describe a tree of the model attributes. Every split attribute
+     * and split value must exist, every node class must be a class value, and the sub nodes of every node must come
+     * after it and lie within the tree, so classifying a row always ends at a node of the tree.
+     *
+     * @param filePath             The file path of the model file
+     * @param modelDescriptor      The data descriptor of the model
+     * @param attributeValueCounts The number of unique values of each model attribute
+     * @param splitAttributes      The split attribute of each node
+     * @param splitValues          The split value of each node
+     * @param firstSubNodes        The first sub node of each node
+     * @param nodeClasses          The class of each node
+     * @throws IOException If the arrays do not describe a valid tree
+     */
+    private static void checkTree(String filePath, DataDescriptor modelDescriptor, IntBuffer attributeValueCounts,
+                                  IntBuffer splitAttributes, IntBuffer splitValues, IntBuffer firstSubNodes,
+                                  IntBuffer nodeClasses) throws IOException {
+
+        // The value counts must match the data descriptor that rows are encoded with
+        int numberOfAttributes = attributeValueCounts.limit();
+        for (int a = 0; a < numberOfAttributes; a++) {
+            if (attributeValueCounts.get(a) != modelDescriptor.getUniqueAttributeValues(a).size()) {
+                throw new IOException(filePath + " has " + attributeValueCounts.get(a) + " values for attribute " + a
+                        + " but a data descriptor with " + modelDescriptor.getUniqueAttributeValues(a).size());
+            }
+        }
+
+        int numberOfNodes = splitAttributes.limit();
+        int numberOfClasses = attributeValueCounts.get(modelDescriptor.getClassAttributeIndex());
+        for (int node = 0; node < numberOfNodes; node++) {
+
+            int nodeClass = nodeClasses.get(node);
+            if (nodeClass < 0 || nodeClass >= numberOfClasses) {
+                throw new IOException(filePath + " has an invalid class " + nodeClass + " at node " + node);
+            }
+
+            // Leaf nodes have no sub nodes to check
+            int attribute = splitAttributes.get(node);
+            if (attribute == -1) continue;
+            if (attribute < 0 || attribute >= numberOfAttributes) {
+                throw new IOException(filePath + " has an invalid split attribute " + attribute + " at node " + node);
+            }
+
+            // A binary split has two sub nodes and any other split has one for each value of its attribute
+            int splitValue = splitValues.get(node);
+            if (splitValue < -1 || splitValue >= attributeValueCounts.get(attribute)) {
+                throw new IOException(filePath + " has an invalid split value " + splitValue + " at node " + node);
+            }
+            int numberOfSubNodes = splitValue != -1 ? 2 : attributeValueCounts.get(attribute);
+
+            // Sub nodes always follow their node, which also rules out cycles
+            int firstSubNode = firstSubNodes.get(node);
+            if (firstSubNode <= node || firstSubNode > numberOfNodes - numberOfSubNodes) {
+                throw new IOException(filePath + " has invalid sub nodes starting at " + firstSubNode + " for node " + node);
+            }
+        }
+    }
+
+    /**
+     * Returns the data descriptor of the input data, used to encode test and prediction files.
+     *
+     * @return The data descriptor
+     */
+    public DataDescriptor getDataDescriptor() {
+
+        return dataDescriptor;
+    }
+
+    /**
+     * Returns the preprocessor that converts input rows into binarised rows for the model.
+     *
+     * @return The preprocessor, or null if the model was not built with binarised data
+     */
+    public DataPreprocessor getPreprocessor() {
+
+        return preprocessor;
+    }
+
+    /**
+     * Returns the loaded model.
+     *
+     * @return The ID3 model
+     */
+    public ID3 getModel() {
+
+        return model;
+    }
+
+    /**
+     * Rounds a position up to the next four byte boundary.
+     */
+    private static int align(int position) {
+
+        return (position + 3) & ~3;
+    }
+
+    /**
+     * Writes a string as its byte length followed by its bytes.
+     */
+    private static void putString(ByteBuffer buffer, byte[] string) {
+
+        buffer.putInt(string.length).put(string);
+    }
+
+    /**
+     * Reads a length, which can not be negative or larger than the rest of the file.
+     */
+    private static int getLength(ByteBuffer buffer, String filePath) throws IOException {
+
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException(filePath + " has an invalid length " + length + " at byte " + (buffer.position() - 4));
+        }
+        return length;
+    }
+
+    /**
+     * Reads a string written by {@link #putString(ByteBuffer, byte[])}.
+     */
+    private static String getString(ByteBuffer buffer, String filePath) throws IOException {
+
+        byte[] string = new byte[getLength(buffer, filePath)];
+        buffer.get(string);
+        return new String(string, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes all the ints of an int buffer.
+     */
+    private static void putInts(ByteBuffer buffer, IntBuffer ints) {
+
+        for (int i = 0; i < ints.limit(); i++) {
+            buffer.putInt(ints.get(i));
+        }
+    }
+
+    /**
+     * Creates an int buffer view of the next ints of the buffer and moves past them.
+     */
+    private static IntBuffer intView(ByteBuffer buffer, int length) {
+
+        if (length < 0 || buffer.remaining() / 4 < length) throw new BufferUnderflowException();
+
+        ByteBuffer slice = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        ((Buffer) slice).limit(4 * length);
+        ((Buffer) buffer).position(buffer.position() + 4 * length);
+        return slice.asIntBuffer();
+    }
+}
@@ -0,0 +1,27 @@
+package com.riaanvo;
+
+/**
+ * Flight recorder event for the construction of a single node of an {@link ID3} tree. The duration covers counting the
+ * samples, searching for the split and partitioning the samples, but not the construction of the sub nodes, so the
+ * events of a tree can be summed without counting any work twice.
+ */
+class NodeBuildEvent extends FlightEvent {
+
+    int depth;
+    int samples;
+
+    // The number of attributes whose information gain was calculated
+    int candidateAttributes;
+
+    // The attribute the samples were split on, or null for a leaf
+    String splitAttribute;
+
+    double informationGain;
+    int branches;
+
+    @Override
+    Recording createRecording(Recorder recorder) {
+
+        return recorder.createNodeBuildRecording();
+    }
+}
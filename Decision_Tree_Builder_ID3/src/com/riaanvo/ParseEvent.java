@@ -0,0 +1,22 @@
+package com.riaanvo;
+
+/**
+ * Flight recorder event for the parsing or streaming of a data set file by the {@link DataParser}.
+ */
+class ParseEvent extends FlightEvent {
+
+    String filePath;
+    long rows;
+    long bytes;
+    boolean memoryMapped;
+    int threads;
+
+    // If the rows were passed on one at a time instead of stored in a data set
+    boolean streamed;
+
+    @Override
+    Recording createRecording(Recorder recorder) {
+
+        return recorder.createParseRecording();
+    }
+}
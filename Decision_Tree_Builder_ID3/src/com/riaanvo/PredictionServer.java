@@ -0,0 +1,292 @@
+package com.riaanvo;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the predictions of a loaded model over HTTP on the loopback address. Rows are posted to {@code /predict} as
+ * comma separated values with the same columns as the data set files, without a header row, and the predicted class of
+ * each row is returned on its own line.
+ * <p>
+ * Every request is handled on its own thread, which encodes its rows and queues them. A single batching thread takes
+ * the requests that are waiting, and those that arrive within a short linger time, up to the batch size in rows, and
+ * classifies them together with {@link ID3#classifyRows(int[][], int, int[])}. Under load many small requests therefore
+ * share one pass through the tree, while a lone request waits no longer than the linger time.
+ */
+public class PredictionServer {
+
+    // The longest a request waits for the batching thread to classify its rows
+    private static final long BATCH_TIMEOUT_SECONDS = 30;
+
+    private final ID3 model;
+    private final DataDescriptor dataDescriptor;
+    private final DataPreprocessor preprocessor;
+    private final int maxBatchRows;
+    private final long lingerNanos;
+    private final BlockingQueue<PredictionRequest> pendingRequests = new LinkedBlockingQueue<>();
+
+    /**
+     * Constructor for a prediction server.
+     *
+     * @param modelFile    The loaded model to predict with
+     * @param maxBatchRows The largest number of rows classified in one batch
+     * @param lingerMicros The longest time in microseconds a batch waits for more requests before it is classified
+     */
+    public PredictionServer(ModelFile modelFile, int maxBatchRows, long lingerMicros) {
+
+        this.model = modelFile.getModel();
+        this.dataDescriptor = modelFile.getDataDescriptor();
+        this.preprocessor = modelFile.getPreprocessor();
+        this.maxBatchRows = Math.max(1, maxBatchRows);
+        this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, lingerMicros));
+    }
+
+    /**
+     * Starts the batching thread and the HTTP server. The server keeps running after this method returns.
+     *
+     * @param port The local port to listen on
+     * @throws IOException If the port can not be listened on
+     */
+    public void start(int port) throws IOException {
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/predict", this::handlePredict);
+
+        // Requests mostly wait for their batch, so each one gets a thread rather than sharing a fixed number
+        server.setExecutor(Executors.newCachedThreadPool());
+
+        Thread batchThread = new Thread(this::classifyBatches, "prediction-batcher");
+        batchThread.start();
+        server.start();
+
+        System.out.println("Prediction server listening on http://" + server.getAddress().getHostString() + ":"
+                + server.getAddress().getPort() + "/predict");
+    }
+
+    /**
+     * Handles a request to the predict endpoint.
+     *
+     * @param exchange The HTTP request and response
+     * @throws IOException If the response can not be sent
+     */
+    private void handlePredict(HttpExchange exchange) throws IOException {
+
+        try {
+
+            if (!exchange.getRequestMethod().equals("POST")) {
+
+                exchange.getResponseHeaders().add("Allow", "POST");
+                sendResponse(exchange, 405, "Rows must be sent with POST\n");
+                return;
+            }
+
+            int[][] rows = encodeRows(exchange);
+            int[] predictedClasses;
+            if (rows.length > maxBatchRows) {
+
+                // A request larger than a batch is classified on its own thread
+                predictedClasses = new int[rows.length];
+                model.classifyRows(rows, rows.length, predictedClasses);
+            } else {
+
+                // Wait for the batching thread to classify the rows together with the other waiting requests
+                PredictionRequest request = new PredictionRequest(rows);
+                pendingRequests.add(request);
+                if (!request.done.await(BATCH_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+
+                    pendingRequests.remove(request);
+                    sendResponse(exchange, 503, "Timed out waiting for the rows to be classified\n");
+                    return;
+                }
+
+                // The batching thread has already reported why the batch failed
+                if (request.failure != null) {
+
+                    sendResponse(exchange, 500, "Rows could not be classified\n");
+                    return;
+                }
+                predictedClasses = request.predictedClasses;
+            }
+
+            // Send the predicted class value of each row
+            DataDescriptor modelDescriptor = model.getDataDescriptor();
+            int modelClassIndex = modelDescriptor.getClassAttributeIndex();
+            StringBuilder s = new StringBuilder();
+            for (int predictedClass : predictedClasses) {
+                s.append(modelDescriptor.indexToValue(modelClassIndex, predictedClass)).append("\n");
+            }
+            sendResponse(exchange, 200, s.toString());
+
+        } catch (IllegalArgumentException e) {
+
+            sendResponse(exchange, 400, e.getMessage() + "\n");
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            sendResponse(exchange, 503, "Server is shutting down\n");
+        } catch (RuntimeException e) {
+
+            e.printStackTrace();
+            sendResponse(exchange, 500, "Rows could not be classified\n");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Reads the rows of a request and encodes them into the rows used by the model.
+     *
+     * @param exchange The HTTP request
+     * @return The encoded rows
+     * @throws IOException If the request can not be read
+     */
+    private int[][] encodeRows(HttpExchange exchange) throws IOException {
+
+        List<int[]> rows = new ArrayList<>();
+        String[] values = new String[dataDescriptor.getNumberOfAttributes()];
+        int[] valueIndexes = new int[values.length];
+
+        // Keep a copy of each row, converted to the binarised attributes first if the model uses them
+        RowHandler rowCollector = row -> rows.add(row.clone());
+        if (preprocessor != null) rowCollector = preprocessor.binarisingStage(rowCollector);
+
+        BufferedReader br = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+        String row;
+        int rowNumber = 0;
+        while ((row = br.readLine()) != null) {
+
+            rowNumber++;
+
+            // Skip any blank rows
+            if (row.isEmpty()) continue;
+
+            // Encode the values, unknown values are given the index '-1'
+            DataParser.splitRow(row, values, rowNumber);
+            dataDescriptor.convertStringValuesToInt(values, valueIndexes);
+            rowCollector.handleRow(valueIndexes);
+        }
+
+        return rows.toArray(new int[rows.size()][]);
+    }
+
+    /**
+     * Takes the waiting requests in batches and classifies each batch, until the thread is interrupted.
+     */
+    private void classifyBatches() {
+
+        // The rows and classes of a batch are gathered into the same arrays every time
+        int[][] batchRows = new int[maxBatchRows][];
+        int[] batchClasses = new int[maxBatchRows];
+        List<PredictionRequest> batch = new ArrayList<>();
+
+        // A request that did not fit in the previous batch starts the next one
+        PredictionRequest nextRequest = null;
+
+        try {
+            while (true) {
+
+                // Wait for a request, then add the requests that are waiting or that arrive before the linger time is
+                // up, until the batch is full
+                PredictionRequest request = nextRequest != null ? nextRequest : pendingRequests.take();
+                nextRequest = null;
+                long lingerEnd = System.nanoTime() + lingerNanos;
+                int batchSize = 0;
+                while (request != null) {
+
+                    batch.add(request);
+                    System.arraycopy(request.rows, 0, batchRows, batchSize, request.rows.length);
+                    batchSize += request.rows.length;
+                    if (batchSize == maxBatchRows) break;
+
+                    long lingerLeft = lingerEnd - System.nanoTime();
+                    request = lingerLeft > 0 ? pendingRequests.poll(lingerLeft, TimeUnit.NANOSECONDS) : pendingRequests.poll();
+                    if (request != null && batchSize + request.rows.length > maxBatchRows) {
+
+                        nextRequest = request;
+                        request = null;
+                    }
+                }
+
+                // Hand each request its classes, or the failure if the batch could not be classified. Every request is
+                // woken either way, so a failed batch does not stop the thread or leave its requests waiting
+                try {
+
+                    model.classifyRows(batchRows, batchSize, batchClasses);
+
+                    int offset = 0;
+                    for (PredictionRequest batchRequest : batch) {
+
+                        batchRequest.predictedClasses = new int[batchRequest.rows.length];
+                        System.arraycopy(batchClasses, offset, batchRequest.predictedClasses, 0, batchRequest.rows.length);
+                        offset += batchRequest.rows.length;
+                    }
+                } catch (RuntimeException e) {
+
+                    e.printStackTrace();
+                    for (PredictionRequest batchRequest : batch) {
+                        batchRequest.failure = e;
+                    }
+                } finally {
+
+                    for (PredictionRequest batchRequest : batch) {
+                        batchRequest.done.countDown();
+                    }
+                    batch.clear();
+                    Arrays.fill(batchRows, 0, batchSize, null);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sends a plain text response.
+     *
+     * @param exchange   The HTTP request and response
+     * @param statusCode The HTTP status code
+     * @param body       The text of the response
+     * @throws IOException If the response can not be sent
+     */
+    private static void sendResponse(HttpExchange exchange, int statusCode, String body) throws IOException {
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    /**
+     * The rows of a request waiting to be classified by the batching thread.
+     */
+    private static class PredictionRequest {
+
+        private final int[][] rows;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private int[] predictedClasses;
+        private RuntimeException failure;
+
+        PredictionRequest(int[][] rows) {
+
+            this.rows = rows;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.riaanvo;
+
+import java.io.IOException;
+
+/**
+ * Receives the rows of a data set one at a time as they are read from a file by
+ * {@link DataParser#streamData(String, DataDescriptor, RowHandler)}. Handlers can be chained into a pipeline where each
+ * stage transforms a row and passes it on, such as {@link DataPreprocessor#binarisingStage(RowHandler)}.
+ */
+public interface RowHandler {
+
+    /**
+     * Handles a single encoded row. The array is reused for the next row, so it must not be kept after the call.
+     *
+     * @param valueIndexes The value index of each attribute of the row
+     * @throws IOException If the row can not be handled
+     */
+    void handleRow(int[] valueIndexes) throws IOException;
+}
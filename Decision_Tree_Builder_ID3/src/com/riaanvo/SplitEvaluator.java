@@ -0,0 +1,420 @@
+package com.riaanvo;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Scores the candidate attribute splits of a decision tree node. A single pass over the nodes sample rows fills a
+ * contingency table of [attribute value][class] counts for every candidate attribute at once, and the information gain
+ * of each attribute is then calculated from those counts alone with an {@link EntropyTable}, so no logarithms are taken.
+ * All the tables are allocated once per tree build, so scoring a node does not allocate.
+ * <p>
+ * The table of the chosen attribute holds the class counts of every sub node, so the sub nodes are given their counts
+ * and do not count their samples again.
+ * <p>
+ * Binarised attributes are not counted one by one. The column of the original attribute they were made from is
+ * counted once into its own table, and the table of each binarised attribute is derived from it: the true row is the
+ * row of its value and the false row is the node's class counts minus the true row. Counting a node therefore costs
+ * the same for a binarised data set as for the data set it was made from.
+ * <p>
+ * A binary split on whether an attribute has a single value is scored from the table of the attribute in the same way:
+ * the value's row holds the class counts of the samples with the value and the rest are the node's class counts minus
+ * that row.
+ * <p>
+ * If a fork/join pool is provided the columns are counted concurrently. Each column has its own table, so the workers
+ * never write to the same counts and the results are identical to counting on a single thread.
+ */
+class SplitEvaluator {
+
+    // The minimum amount of work (sample rows x counted columns) worth counting as a separate task
+    private static final int PARALLEL_THRESHOLD = 1 << 15;
+
+    private final DataColumn[] columns;
+    private final DataColumn classColumn;
+    private final int numberOfClasses;
+    private final EntropyTable entropyTable;
+
+    // Counts for attribute a, value v and class c are stored at counts[tableOffsets[a] + v * numberOfClasses + c]
+    private final int[] numberOfValues;
+    private final int[] tableOffsets;
+    private final int[] counts;
+
+    // The source column of each binarised attribute, or -1 for other attributes, and the value it is true for. Every
+    // source column has a table after the attribute tables, and the class totals of its last count
+    private final int[] attributeSources;
+    private final int[] oneHotValues;
+    private final DataColumn[] sourceColumns;
+    private final int[] sourceNumberOfValues;
+    private final int[] sourceTableOffsets;
+    private final int[] sourceClassTotals;
+    private final boolean[] sourceCounted;
+
+    // The attributes counted by the last call to countSamples
+    private final int[] candidates;
+    private int numberOfCandidates = 0;
+
+    // The columns counted by the last call to countSamples and the offsets of the tables they are counted into
+    private final DataColumn[] countedColumns;
+    private final int[] countedOffsets;
+    private int numberOfCountedColumns = 0;
+
+    // The class counts of the samples without the value of a binary split
+    private final int[] restCounts;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructor for creating a split evaluator for the provided training data set.
+     *
+     * @param dataSet      The training data set
+     * @param entropyTable The table used to calculate entropies
+     * @param pool         The pool used to count attributes concurrently, or null to count on the calling thread
+     */
+    SplitEvaluator(DataSet dataSet, EntropyTable entropyTable, ForkJoinPool pool) {
+
+        this.entropyTable = entropyTable;
+        this.pool = pool;
+
+        DataDescriptor dataDescriptor = dataSet.getDataDescriptor();
+        int numberOfAttributes = dataDescriptor.getNumberOfAttributes();
+
+        columns = new DataColumn[numberOfAttributes];
+        classColumn = dataSet.getColumn(dataDescriptor.getClassAttributeIndex());
+        numberOfClasses = dataDescriptor.getNumberOfClasses();
+
+        // Lay out a contingency table for every attribute one after the other, and find the source columns of the
+        // binarised attributes
+        numberOfValues = new int[numberOfAttributes];
+        tableOffsets = new int[numberOfAttributes];
+        attributeSources = new int[numberOfAttributes];
+        oneHotValues = new int[numberOfAttributes];
+        Map<DataColumn, Integer> sourceIndexes = new IdentityHashMap<>();
+        int tableSize = 0;
+        for (int a = 0; a < numberOfAttributes; a++) {
+
+            columns[a] = dataSet.getColumn(a);
+            numberOfValues[a] = dataDescriptor.getUniqueAttributeValues(a).size();
+            tableOffsets[a] = tableSize;
+            tableSize += numberOfValues[a] * numberOfClasses;
+
+            attributeSources[a] = -1;
+            if (columns[a] instanceof DataColumn.OneHotColumn) {
+
+                DataColumn.OneHotColumn oneHotColumn = (DataColumn.OneHotColumn) columns[a];
+                Integer source = sourceIndexes.get(oneHotColumn.getSource());
+                if (source == null) {
+
+                    source = sourceIndexes.size();
+                    sourceIndexes.put(oneHotColumn.getSource(), source);
+                }
+                attributeSources[a] = source;
+                oneHotValues[a] = oneHotColumn.getValue();
+            }
+        }
+
+        // Lay out a table for every source column after the attribute tables
+        int numberOfSources = sourceIndexes.size();
+        sourceColumns = new DataColumn[numberOfSources];
+        sourceNumberOfValues = new int[numberOfSources];
+        sourceTableOffsets = new int[numberOfSources];
+        for (int a = 0; a < numberOfAttributes; a++) {
+
+            int source = attributeSources[a];
+            if (source == -1 || sourceColumns[source] != null) continue;
+
+            DataColumn.OneHotColumn oneHotColumn = (DataColumn.OneHotColumn) columns[a];
+            sourceColumns[source] = oneHotColumn.getSource();
+            sourceNumberOfValues[source] = oneHotColumn.getSourceCardinality();
+            sourceTableOffsets[source] = tableSize;
+            tableSize += sourceNumberOfValues[source] * numberOfClasses;
+        }
+        sourceClassTotals = new int[numberOfSources * numberOfClasses];
+        sourceCounted = new boolean[numberOfSources];
+
+        counts = new int[tableSize];
+        candidates = new int[numberOfAttributes];
+        countedColumns = new DataColumn[numberOfAttributes];
+        countedOffsets = new int[numberOfAttributes];
+        restCounts = new int[numberOfClasses];
+    }
+
+    /**
+     * Fills the contingency tables of every attribute that is not yet used with the class counts of a range of sample
+     * rows. Only a single pass is made over the sample rows.
+     *
+     * @param sampleRows     The array of sample row indexes
+     * @param from           Start (inclusive) of the range of sample rows
+     * @param to             End (exclusive) of the range of sample rows
+     * @param usedAttributes Bit set marking the attributes that can no longer be used to split the data
+     */
+    void countSamples(int[] sampleRows, int from, int to, BitSet usedAttributes) {
+
+        // Collect the candidate attributes and the columns to count for them, the source column of a binarised
+        // attribute being counted only once
+        numberOfCandidates = 0;
+        numberOfCountedColumns = 0;
+        Arrays.fill(sourceCounted, false);
+        for (int a = usedAttributes.nextClearBit(0); a < columns.length; a = usedAttributes.nextClearBit(a + 1)) {
+
+            candidates[numberOfCandidates++] = a;
+
+            int source = attributeSources[a];
+            if (source == -1) {
+
+                addCountColumn(columns[a], tableOffsets[a], numberOfValues[a]);
+            } else if (!sourceCounted[source]) {
+
+                sourceCounted[source] = true;
+                addCountColumn(sourceColumns[source], sourceTableOffsets[source], sourceNumberOfValues[source]);
+            }
+        }
+
+        // Count on the calling thread unless there is enough work to share between the pool workers
+        if (pool == null || numberOfCountedColumns < 2 || (long) (to - from) * numberOfCountedColumns < 2 * PARALLEL_THRESHOLD) {
+
+            countColumns(sampleRows, from, to, 0, numberOfCountedColumns);
+        } else {
+
+            CountTask task = new CountTask(sampleRows, from, to, 0, numberOfCountedColumns);
+
+            // Run the task directly if this thread is already one of the pools workers
+            if (ForkJoinTask.getPool() == pool) {
+                task.invoke();
+            } else {
+                pool.invoke(task);
+            }
+        }
+
+        // Derive the tables of the binarised attributes from the tables of their source columns
+        for (int source = 0; source < sourceColumns.length; source++) {
+            if (sourceCounted[source]) sumSourceClasses(source);
+        }
+        for (int c = 0; c < numberOfCandidates; c++) {
+            if (attributeSources[candidates[c]] != -1) deriveOneHotTable(candidates[c]);
+        }
+    }
+
+    /**
+     * Adds a column to be counted by the next pass over the sample rows and clears its table.
+     *
+     * @param column         The column to count
+     * @param tableOffset    The offset of the table the column is counted into
+     * @param numberOfValues The number of values of the column
+     */
+    private void addCountColumn(DataColumn column, int tableOffset, int numberOfValues) {
+
+        countedColumns[numberOfCountedColumns] = column;
+        countedOffsets[numberOfCountedColumns] = tableOffset;
+        numberOfCountedColumns++;
+        Arrays.fill(counts, tableOffset, tableOffset + numberOfValues * numberOfClasses, 0);
+    }
+
+    /**
+     * Sums the table of a source column over its values, which gives the class counts of the counted sample rows.
+     *
+     * @param source The index of the source column
+     */
+    private void sumSourceClasses(int source) {
+
+        int totalsOffset = source * numberOfClasses;
+        Arrays.fill(sourceClassTotals, totalsOffset, totalsOffset + numberOfClasses, 0);
+        for (int v = 0; v < sourceNumberOfValues[source]; v++) {
+
+            int offset = sourceTableOffsets[source] + v * numberOfClasses;
+            for (int c = 0; c < numberOfClasses; c++) {
+                sourceClassTotals[totalsOffset + c] += counts[offset + c];
+            }
+        }
+    }
+
+    /**
+     * Fills the table of a binarised attribute from the table of its source column. The true row is the row of the
+     * value the attribute is true for, and the false row is the class counts of every other value.
+     *
+     * @param attributeIndex The binarised attribute
+     */
+    private void deriveOneHotTable(int attributeIndex) {
+
+        int source = attributeSources[attributeIndex];
+        int valueOffset = sourceTableOffsets[source] + oneHotValues[attributeIndex] * numberOfClasses;
+        int falseOffset = tableOffsets[attributeIndex];
+        int trueOffset = falseOffset + numberOfClasses;
+        for (int c = 0; c < numberOfClasses; c++) {
+
+            counts[trueOffset + c] = counts[valueOffset + c];
+            counts[falseOffset + c] = sourceClassTotals[source * numberOfClasses + c] - counts[valueOffset + c];
+        }
+    }
+
+    /**
+     * Returns the class counts of every value subset of a candidate attribute, as filled by the last call to
+     * {@link #countSamples(int[], int, int, BitSet)}. These are the class counts of the nodes created by
+     * splitting on the attribute.
+     *
+     * @param attributeIndex The candidate attribute
+     * @return The class counts of each value of the attribute
+     */
+    int[][] getValueClassCounts(int attributeIndex) {
+
+        int[][] valueClassCounts = new int[numberOfValues[attributeIndex]][];
+        for (int v = 0; v < valueClassCounts.length; v++) {
+
+            int offset = tableOffsets[attributeIndex] + v * numberOfClasses;
+            valueClassCounts[v] = Arrays.copyOfRange(counts, offset, offset + numberOfClasses);
+        }
+
+        return valueClassCounts;
+    }
+
+    /**
+     * Returns the class counts of the two subsets of a binary split on a value of a candidate attribute, as filled by
+     * the last call to {@link #countSamples(int[], int, int, BitSet)}.
+     *
+     * @param attributeIndex The candidate attribute
+     * @param value          The value of the split
+     * @param classCounts    The class counts of the node being split
+     * @return The class counts of the samples without the value, followed by those of the samples with it
+     */
+    int[][] getOneVsRestClassCounts(int attributeIndex, int value, int[] classCounts) {
+
+        int offset = tableOffsets[attributeIndex] + value * numberOfClasses;
+        int[] valueCounts = Arrays.copyOfRange(counts, offset, offset + numberOfClasses);
+        int[] otherCounts = new int[numberOfClasses];
+        for (int c = 0; c < numberOfClasses; c++) {
+            otherCounts[c] = classCounts[c] - valueCounts[c];
+        }
+
+        return new int[][]{otherCounts, valueCounts};
+    }
+
+    /**
+     * Adds every sample row in the range to the tables of a range of the columns being counted.
+     *
+     * @param sampleRows  The array of sample row indexes
+     * @param from        Start (inclusive) of the range of sample rows
+     * @param to          End (exclusive) of the range of sample rows
+     * @param firstColumn Start (inclusive) of the range of columns
+     * @param lastColumn  End (exclusive) of the range of columns
+     */
+    private void countColumns(int[] sampleRows, int from, int to, int firstColumn, int lastColumn) {
+
+        for (int i = from; i < to; i++) {
+
+            int row = sampleRows[i];
+            int classValue = classColumn.get(row);
+            for (int k = firstColumn; k < lastColumn; k++) {
+                counts[countedOffsets[k] + countedColumns[k].get(row) * numberOfClasses + classValue]++;
+            }
+        }
+    }
+
+    /**
+     * Calculates the information gain of splitting on an attribute using the contingency table filled by the last call
+     * to {@link #countSamples(int[], int, int, BitSet)}.
+     *
+     * @param attributeIndex Attribute to split and calculate information gain
+     * @param currentEntropy The entropy of the node being split
+     * @param sampleCount    The number of samples in the node being split
+     * @return The information gain of this split
+     */
+    double calculateInformationGain(int attributeIndex, double currentEntropy, int sampleCount) {
+
+        // Sum up the entropy of every value subset, weighted by its size
+        double weightedEntropySum = 0;
+        for (int v = 0; v < numberOfValues[attributeIndex]; v++) {
+
+            int offset = tableOffsets[attributeIndex] + v * numberOfClasses;
+
+            // Determine the size of the subset and skip it if it does not have any samples
+            int subsetSize = 0;
+            for (int c = 0; c < numberOfClasses; c++) {
+                subsetSize += counts[offset + c];
+            }
+            if (subsetSize == 0) continue;
+
+            weightedEntropySum += entropyTable.weightedEntropy(counts, offset, numberOfClasses, subsetSize);
+        }
+
+        return currentEntropy - weightedEntropySum / sampleCount;
+    }
+
+    /**
+     * Calculates the information gain of a binary split on whether an attribute has a value, using the contingency
+     * table filled by the last call to {@link #countSamples(int[], int, int, BitSet)}. The subsets are summed in the
+     * same order as the false and true values of a binarised attribute, so the gain is identical to the gain of the
+     * matching binarised attribute.
+     *
+     * @param attributeIndex The attribute of the split
+     * @param value          The value of the split
+     * @param classCounts    The class counts of the node being split
+     * @param currentEntropy The entropy of the node being split
+     * @param sampleCount    The number of samples in the node being split
+     * @return The information gain of this split
+     */
+    double calculateOneVsRestGain(int attributeIndex, int value, int[] classCounts, double currentEntropy, int sampleCount) {
+
+        int offset = tableOffsets[attributeIndex] + value * numberOfClasses;
+
+        // Split the node's class counts into the samples with the value and the rest
+        int valueSize = 0;
+        for (int c = 0; c < numberOfClasses; c++) {
+
+            valueSize += counts[offset + c];
+            restCounts[c] = classCounts[c] - counts[offset + c];
+        }
+        int restSize = sampleCount - valueSize;
+
+        // Sum up the entropy of both subsets, weighted by their size, skipping a subset without any samples
+        double weightedEntropySum = 0;
+        if (restSize != 0) weightedEntropySum += entropyTable.weightedEntropy(restCounts, 0, numberOfClasses, restSize);
+        if (valueSize != 0) weightedEntropySum += entropyTable.weightedEntropy(counts, offset, numberOfClasses, valueSize);
+
+        return currentEntropy - weightedEntropySum / sampleCount;
+    }
+
+    /**
+     * Fork/join task that counts a range of the columns, splitting the range in half until the amount of work is small
+     * enough to count directly.
+     */
+    private class CountTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] sampleRows;
+        private final int from;
+        private final int to;
+        private final int firstColumn;
+        private final int lastColumn;
+
+        CountTask(int[] sampleRows, int from, int to, int firstColumn, int lastColumn) {
+
+            this.sampleRows = sampleRows;
+            this.from = from;
+            this.to = to;
+            this.firstColumn = firstColumn;
+            this.lastColumn = lastColumn;
+        }
+
+        @Override
+        protected void compute() {
+
+            int numberOfTaskColumns = lastColumn - firstColumn;
+
+            // Count directly if this is a single column or there is too little work left to split
+            if (numberOfTaskColumns == 1 || (long) (to - from) * numberOfTaskColumns <= PARALLEL_THRESHOLD) {
+
+                countColumns(sampleRows, from, to, firstColumn, lastColumn);
+                return;
+            }
+
+            int middle = firstColumn + numberOfTaskColumns / 2;
+            invokeAll(new CountTask(sampleRows, from, to, firstColumn, middle),
+                    new CountTask(sampleRows, from, to, middle, lastColumn));
+        }
+    }
+}